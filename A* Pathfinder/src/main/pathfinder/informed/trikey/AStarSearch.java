@@ -0,0 +1,180 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * A* graph search over the packed states of a CompiledMaze. All per-state
+ * bookkeeping lives in dense int[] arrays indexed by packed state, and those
+ * arrays are kept between searches, so an instance that is reused for many
+ * searches generates no garbage beyond the returned solution.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+class AStarSearch {
+
+    // Best known cost and parent state of each packed state; only valid where
+    // the matching visited entry equals the current search generation
+    private int[] cost = new int[0], parent = new int[0], visited = new int[0];
+    private int generation;
+    private final BucketQueue open = new BucketQueue();
+    private final int[] successors = new int[4];
+    private int expanded;
+    // ALT landmarks of the maze being searched, or null for Manhattan distance
+    // only; landmark estimates are costly, so each state's is kept in estimates
+    private Landmarks landmarks;
+    private int[] estimates = new int[0];
+
+    /**
+     * Finds an optimal action sequence that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         there is no solution.
+     */
+    List<String> solve(CompiledMaze maze) {
+        PackedPath path = solvePacked(maze);
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * Finds an optimal sequence of moves that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return The packed moves, or null if there is no solution.
+     */
+    PackedPath solvePacked(CompiledMaze maze) {
+        return solvePacked(maze, null);
+    }
+
+    /**
+     * Finds an optimal sequence of moves that collects every key in the maze,
+     * guided by the larger of the Manhattan and ALT landmark estimates. States
+     * from which the landmarks prove some key unreachable are never queued.
+     *
+     * @param maze      The CompiledMaze to search.
+     * @param landmarks Landmarks built for this maze, or null for Manhattan only.
+     * @return The packed moves, or null if there is no solution.
+     * @throws IllegalArgumentException If the landmarks were built for a maze of
+     *                                  another size.
+     */
+    PackedPath solvePacked(CompiledMaze maze, Landmarks landmarks) {
+        if (landmarks != null && !landmarks.fits(maze)) {
+            throw new IllegalArgumentException("Landmarks were built for a different maze");
+        }
+        expanded = 0;
+        if (!maze.isComplete()) {
+            return null;
+        }
+        this.landmarks = landmarks;
+        prepare(maze.stateCount());
+        open.clear();
+
+        int initial = maze.state(maze.start(), 0), allKeys = maze.allKeys(), h = estimate(maze, initial);
+        if (h == KeyRouter.UNREACHABLE) {
+            return null;
+        }
+        visit(initial, 0, -1, h);
+        open.push(initial, h, 0);
+
+        while (!open.isEmpty()) {
+            int state = open.pop(), g = cost[state];
+            // Skip entries superseded by a cheaper path pushed later
+            if (open.poppedF() != g + (landmarks == null ? maze.manhattan(state) : estimates[state])) {
+                continue;
+            }
+            if ((state & allKeys) == allKeys) {
+                return path(maze, state);
+            }
+            expanded++;
+
+            for (int i = 0, count = maze.successors(state, successors); i < count; i++) {
+                int next = successors[i], nextCost = g + maze.cost(maze.cellOf(next));
+                if (visited[next] != generation || nextCost < cost[next]) {
+                    int nextH = estimate(maze, next);
+                    if (nextH == KeyRouter.UNREACHABLE) {
+                        continue;
+                    }
+                    visit(next, nextCost, state, nextH);
+                    open.push(next, nextCost + nextH, nextCost);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of states expanded by the most recent search.
+     */
+    int expanded() {
+        return expanded;
+    }
+
+    /**
+     * @param maze  The CompiledMaze being searched.
+     * @param state A packed state.
+     * @return The heuristic of the state, or UNREACHABLE if the landmarks prove
+     *         it cannot collect every key.
+     */
+    private int estimate(CompiledMaze maze, int state) {
+        int manhattan = maze.manhattan(state);
+        return landmarks == null ? manhattan : Math.max(manhattan, landmarks.estimate(maze, state));
+    }
+
+    /**
+     * Grows the per-state arrays if needed and starts a new search generation,
+     * which invalidates every entry left over from previous searches.
+     *
+     * @param states The number of packed states in the next search.
+     */
+    private void prepare(int states) {
+        if (cost.length < states) {
+            cost = new int[states];
+            parent = new int[states];
+            visited = new int[states];
+            generation = 0;
+        }
+        if (landmarks != null && estimates.length < states) {
+            estimates = new int[states];
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Records a new best cost and parent for the given state.
+     *
+     * @param state The packed state reached.
+     * @param g     The cost of the path reaching it.
+     * @param from  The packed state it was reached from, -1 for the root.
+     * @param h     The heuristic of the state.
+     */
+    private void visit(int state, int g, int from, int h) {
+        visited[state] = generation;
+        cost[state] = g;
+        parent[state] = from;
+        if (landmarks != null) {
+            estimates[state] = h;
+        }
+    }
+
+    /**
+     * Follows the parent array back from the goal state to recover the moves.
+     *
+     * @param maze The CompiledMaze that was searched.
+     * @param goal The goal state reached.
+     * @return The moves from the initial state to goal.
+     */
+    private PackedPath path(CompiledMaze maze, int goal) {
+        int length = 0;
+        for (int state = goal; parent[state] != -1; state = parent[state]) {
+            length++;
+        }
+        PackedPath result = new PackedPath(length);
+        for (int state = goal; parent[state] != -1; state = parent[state]) {
+            result.set(--length, maze.direction(maze.cellOf(parent[state]), maze.cellOf(state)));
+        }
+        return result;
+    }
+
+}
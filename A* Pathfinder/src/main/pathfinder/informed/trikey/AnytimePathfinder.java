@@ -0,0 +1,387 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Anytime Repairing A* (ARA*) with a per-query time budget. The first
+ * iteration is weighted A*, which orders states by g + w * h with w &gt; 1 and
+ * finds a solution after few expansions. Each following iteration lowers w
+ * and repairs the previous search instead of restarting it: costs are kept,
+ * and only the states that were queued, or whose cost dropped after they were
+ * expanded, are queued again. Iterations stop at w = 1, where the solution is
+ * optimal, or when the budget runs out.<br>
+ * Whenever it stops, the search reports how far from optimal its best
+ * solution can be: its cost divided by the lowest g + h among queued and
+ * inconsistent states, a lower bound on the optimal cost.<br>
+ * The heuristic is {@link CompiledMaze#keyTour(int)}, whose key-ordering
+ * term keeps weighted iterations from stalling on the plateaus of the
+ * farthest-key distance. Per-state arrays are kept between searches and
+ * invalidated by a generation stamp, so a query's budget is not spent on
+ * allocation.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class AnytimePathfinder {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // Weights are fixed point, in thousandths, so priorities stay ints
+    private static final int WEIGHT_SCALE = 1000;
+    // Expansions between checks of the clock
+    private static final int CLOCK_INTERVAL = 256;
+    private static final byte QUEUED = 1, INCONSISTENT = 2;
+
+    private final int initialWeight, weightStep;
+
+    // Per-state cost, parent, and QUEUED / INCONSISTENT flags, only valid where
+    // visited equals the current generation; closed holds the iteration that
+    // last expanded each state, and iterations keep counting across searches
+    private CompiledMaze maze;
+    private int[] cost = new int[0], parent = new int[0], closed = new int[0], visited = new int[0];
+    private byte[] flags = new byte[0];
+    private int generation, iteration;
+    private final LongMinHeap open = new LongMinHeap();
+    private int[] inconsistent = new int[64];
+    private int inconsistentCount, weight, bestGoal, expanded;
+    private final int[] successors = new int[4];
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a search that starts at weight 3 and lowers it by 0.5 per iteration.
+     */
+    public AnytimePathfinder() {
+        this(3.0, 0.5);
+    }
+
+    /**
+     * Creates a search with the given weight schedule.
+     *
+     * @param initialWeight The heuristic weight of the first iteration, at least 1.
+     * @param weightStep    How much to lower the weight after each iteration.
+     * @throws IllegalArgumentException If initialWeight is below 1 or weightStep
+     *                                  is not positive.
+     */
+    public AnytimePathfinder(double initialWeight, double weightStep) {
+        if (initialWeight < 1 || weightStep <= 0) {
+            throw new IllegalArgumentException("Weights must start at 1 or more and step down by a positive amount");
+        }
+        this.initialWeight = (int) Math.round(initialWeight * WEIGHT_SCALE);
+        this.weightStep = Math.max(1, (int) Math.round(weightStep * WEIGHT_SCALE));
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Searches for a solution that collects every key until the search proves
+     * it optimal or the budget runs out.
+     *
+     * @param problem     A MazeProblem that specifies the maze, actions, transitions.
+     * @param budgetNanos The time budget, in nanoseconds from now.
+     * @return The best solution found with its suboptimality bound, or null if
+     *         the search proved there is no solution.
+     */
+    public Result solve(MazeProblem problem, long budgetNanos) {
+        return solve(new CompiledMaze(problem), budgetNanos);
+    }
+
+    /**
+     * Searches an already compiled maze; see {@link #solve(MazeProblem, long)}.
+     *
+     * @param maze        A CompiledMaze of the problem to solve.
+     * @param budgetNanos The time budget, in nanoseconds from now.
+     * @return The best solution found with its suboptimality bound, or null if
+     *         the search proved there is no solution. If the budget ran out
+     *         before any solution was found, the Result's solution is null.
+     */
+    public Result solve(CompiledMaze maze, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        expanded = 0;
+        if (!maze.isComplete()) {
+            return null;
+        }
+        prepare(maze);
+        int initial = maze.state(maze.start(), 0);
+        reach(initial, 0, -1);
+        if (isGoal(initial)) {
+            bestGoal = initial;
+            return result(1.0);
+        }
+        queue(initial);
+
+        while (true) {
+            if (!improve(deadline)) {
+                return result(bound());
+            }
+            if (weight == WEIGHT_SCALE) {
+                return bestGoal == -1 ? null : result(1.0);
+            }
+            // Lower the weight and requeue everything still open or inconsistent
+            // under it; expanded states become closed to the new iteration
+            weight = Math.max(WEIGHT_SCALE, weight - weightStep);
+            iteration++;
+            requeue();
+        }
+    }
+
+    /**
+     * @return The number of states expanded by the most recent search, across
+     *         all of its iterations.
+     */
+    public int expanded() {
+        return expanded;
+    }
+
+    /**
+     * Runs one ARA* iteration: expands states in order of g + w * h until none
+     * queued could lead to a cheaper solution than the best found so far.
+     *
+     * @param deadline The System.nanoTime() at which to give up.
+     * @return True if the iteration finished, false if the deadline passed.
+     */
+    private boolean improve(long deadline) {
+        while (!open.isEmpty()) {
+            long entry = open.peek();
+            int state = (int) entry, key = (int) (entry >>> 32);
+            if ((flags[state] & QUEUED) == 0 || key != key(state)) {
+                open.pop();
+                continue;
+            }
+            if (bestGoal != -1 && cost[bestGoal] <= key) {
+                return true;
+            }
+            if (++expanded % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            open.pop();
+            flags[state] &= ~QUEUED;
+            closed[state] = iteration;
+
+            int g = cost[state];
+            for (int i = 0, count = maze.successors(state, successors); i < count; i++) {
+                int next = successors[i], nextCost = g + maze.cost(maze.cellOf(next));
+                if (visited[next] == generation && nextCost >= cost[next]) {
+                    continue;
+                }
+                reach(next, nextCost, state);
+                if (isGoal(next)) {
+                    // Goals are never expanded; the cheapest one is the solution
+                    if (bestGoal == -1 || nextCost < cost[bestGoal]) {
+                        bestGoal = next;
+                    }
+                } else if (closed[next] != iteration) {
+                    queue(next);
+                } else if ((flags[next] & INCONSISTENT) == 0) {
+                    // Already expanded this iteration; repaired in the next one
+                    flags[next] |= INCONSISTENT;
+                    if (inconsistentCount == inconsistent.length) {
+                        inconsistent = Arrays.copyOf(inconsistent, inconsistentCount * 2);
+                    }
+                    inconsistent[inconsistentCount++] = next;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Grows the per-state arrays if needed and starts a new search generation,
+     * which invalidates every entry left over from previous searches.
+     *
+     * @param maze The CompiledMaze to search.
+     */
+    private void prepare(CompiledMaze maze) {
+        int states = maze.stateCount();
+        this.maze = maze;
+        if (cost.length < states) {
+            cost = new int[states];
+            parent = new int[states];
+            closed = new int[states];
+            visited = new int[states];
+            flags = new byte[states];
+            generation = 0;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+        open.clear();
+        inconsistentCount = 0;
+        weight = initialWeight;
+        iteration++;
+        bestGoal = -1;
+    }
+
+    /**
+     * Records a new best cost and parent for the given state, clearing its flags
+     * if this search has not reached it before.
+     *
+     * @param state The packed state reached.
+     * @param g     The cost of the path reaching it.
+     * @param from  The packed state it was reached from, -1 for the root.
+     */
+    private void reach(int state, int g, int from) {
+        if (visited[state] != generation) {
+            visited[state] = generation;
+            flags[state] = 0;
+        }
+        cost[state] = g;
+        parent[state] = from;
+    }
+
+    /**
+     * Moves every state that is still queued, or became inconsistent, into a
+     * fresh queue keyed by the current weight.
+     */
+    private void requeue() {
+        int[] states = new int[open.size() + inconsistentCount];
+        int count = 0;
+        for (int i = 0; i < open.size(); i++) {
+            int state = (int) open.get(i);
+            // Clearing the flag also drops duplicate entries of the same state
+            if ((flags[state] & QUEUED) != 0) {
+                flags[state] &= ~QUEUED;
+                states[count++] = state;
+            }
+        }
+        for (int i = 0; i < inconsistentCount; i++) {
+            int state = inconsistent[i];
+            flags[state] &= ~INCONSISTENT;
+            if ((flags[state] & QUEUED) == 0) {
+                states[count++] = state;
+            }
+        }
+        open.clear();
+        inconsistentCount = 0;
+        for (int i = 0; i < count; i++) {
+            if ((flags[states[i]] & QUEUED) == 0) {
+                queue(states[i]);
+            }
+        }
+    }
+
+    /**
+     * Pushes a state with its current key and marks it queued.
+     *
+     * @param state A packed state.
+     */
+    private void queue(int state) {
+        flags[state] |= QUEUED;
+        open.push(((long) key(state) << 32) | state);
+    }
+
+    /**
+     * @param state A packed state.
+     * @return Its priority g + w * h under the current weight, rounded down.
+     */
+    private int key(int state) {
+        return cost[state] + (int) ((long) weight * maze.keyTour(state) / WEIGHT_SCALE);
+    }
+
+    /**
+     * @param state A packed state.
+     * @return True if every key has been collected in the state.
+     */
+    private boolean isGoal(int state) {
+        return maze.keysOf(state) == maze.allKeys();
+    }
+
+    /**
+     * Every optimal path leaves the set of expanded, consistent states through a
+     * queued or inconsistent state whose g is already optimal, or ends on a goal
+     * that was found; the smallest g + h over those bounds the optimal cost.
+     *
+     * @return The best solution's cost over that lower bound, at least 1.
+     */
+    private double bound() {
+        if (bestGoal == -1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        long lower = cost[bestGoal];
+        for (int i = 0; i < open.size(); i++) {
+            int state = (int) open.get(i);
+            if ((flags[state] & QUEUED) != 0) {
+                lower = Math.min(lower, cost[state] + maze.keyTour(state));
+            }
+        }
+        for (int i = 0; i < inconsistentCount; i++) {
+            lower = Math.min(lower, cost[inconsistent[i]] + maze.keyTour(inconsistent[i]));
+        }
+        return lower == 0 ? 1.0 : Math.max(1.0, (double) cost[bestGoal] / lower);
+    }
+
+    /**
+     * Builds the Result for the best goal found, if any.
+     *
+     * @param bound The suboptimality bound of that goal's path.
+     * @return The Result.
+     */
+    private Result result(double bound) {
+        if (bestGoal == -1) {
+            return new Result(null, -1, bound);
+        }
+        int length = 0;
+        for (int state = bestGoal; parent[state] != -1; state = parent[state]) {
+            length++;
+        }
+        PackedPath path = new PackedPath(length);
+        int pathCost = 0;
+        for (int state = bestGoal; parent[state] != -1; state = parent[state]) {
+            int cell = maze.cellOf(state);
+            path.set(--length, maze.direction(maze.cellOf(parent[state]), cell));
+            pathCost += maze.cost(cell);
+        }
+        return new Result(path, pathCost, bound);
+    }
+
+    /**
+     * The best solution an anytime search found within its budget.
+     */
+    public static class Result {
+
+        private final PackedPath path;
+        private final int cost;
+        private final double bound;
+
+        Result(PackedPath path, int cost, double bound) {
+            this.path = path;
+            this.cost = cost;
+            this.bound = bound;
+        }
+
+        /**
+         * @return The packed moves of the solution, or null if the budget ran out
+         *         before any solution was found.
+         */
+        public PackedPath path() {
+            return path;
+        }
+
+        /**
+         * @return The actions of the solution of the format ["R", "R", "L", ...],
+         *         or null if the budget ran out before any solution was found.
+         */
+        public List<String> solution() {
+            return path == null ? null : new ArrayList<>(path.asList());
+        }
+
+        /**
+         * @return The cost of the solution, or -1 if there is none.
+         */
+        public int cost() {
+            return cost;
+        }
+
+        /**
+         * @return A proven bound on cost() over the optimal cost: 1.0 if the
+         *         solution is optimal, infinite if there is no solution yet.
+         */
+        public double bound() {
+            return bound;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * Solves many MazeProblems in parallel on a work-stealing ForkJoinPool. The
+ * batch is split recursively into ranges that idle workers steal from each
+ * other, and each worker thread keeps its own search engine, so the dense
+ * per-state arrays of {@link AStarSearch} are allocated once per thread and
+ * reused for every problem it solves.<br>
+ * Results come back in the order of the input problems, each with its own
+ * timing and node count. A BatchSolver owns its pool; close it when done.
+ */
+public class BatchSolver implements AutoCloseable {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // Problems per task below which a range is solved rather than split further
+    private static final int SPLIT_THRESHOLD = 4;
+
+    private final ForkJoinPool pool;
+    private final Pathfinder.Engine engine;
+    private final ThreadLocal<AStarSearch> aStar = ThreadLocal.withInitial(AStarSearch::new);
+    private final ThreadLocal<JumpPointSearch> jumpPoint = ThreadLocal.withInitial(JumpPointSearch::new);
+    private final ThreadLocal<MemoryBoundedSearch> memoryBounded = ThreadLocal.withInitial(MemoryBoundedSearch::new);
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a solver that uses the default A* engine on one thread per
+     * available processor.
+     */
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors(), Pathfinder.Engine.A_STAR);
+    }
+
+    /**
+     * Creates a solver with the given number of worker threads and engine.
+     *
+     * @param parallelism The number of worker threads.
+     * @param engine      The search algorithm to solve every problem with.
+     * @throws IllegalArgumentException If parallelism is less than 1.
+     */
+    public BatchSolver(int parallelism, Pathfinder.Engine engine) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.engine = engine;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Solves every problem in the given collection.
+     *
+     * @param problems The MazeProblems to solve.
+     * @return One Result per problem, in the collection's iteration order.
+     */
+    public List<Result> solveAll(Collection<MazeProblem> problems) {
+        MazeProblem[] batch = problems.toArray(new MazeProblem[0]);
+        Result[] results = new Result[batch.length];
+        pool.invoke(new SolveTask(batch, results, 0, batch.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Solves every problem in the given stream, which is consumed in full before
+     * solving starts.
+     *
+     * @param problems The MazeProblems to solve.
+     * @return One Result per problem, in the stream's encounter order.
+     */
+    public List<Result> solveAll(Stream<MazeProblem> problems) {
+        return solveAll(problems.collect(Collectors.toList()));
+    }
+
+    /**
+     * Shuts down the worker threads once any running batch completes.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Solves one problem with the calling thread's engine.
+     *
+     * @param problem The MazeProblem to solve.
+     * @return The solution with its timing and node count.
+     */
+    private Result solveOne(MazeProblem problem) {
+        long start = System.nanoTime();
+        CompiledMaze maze = new CompiledMaze(problem);
+        List<String> solution;
+        int expanded;
+        switch (engine) {
+        case JUMP_POINT:
+            JumpPointSearch jps = jumpPoint.get();
+            solution = jps.solve(maze);
+            expanded = jps.expanded();
+            break;
+        case KEY_ROUTER:
+            solution = KeyRouter.solve(maze);
+            expanded = -1;
+            break;
+        case CORRIDOR:
+            CorridorGraph graph = new CorridorGraph(maze);
+            solution = graph.solve();
+            expanded = graph.expanded();
+            break;
+        case MEMORY_BOUNDED:
+            MemoryBoundedSearch ida = memoryBounded.get();
+            solution = ida.solve(maze);
+            expanded = (int) Math.min(ida.expanded(), Integer.MAX_VALUE);
+            break;
+        case HASH_DISTRIBUTED:
+            // The batch already keeps every core busy, so splitting each query
+            // across threads would only add messaging; solve it with plain A*
+        default:
+            AStarSearch search = aStar.get();
+            solution = search.solve(maze);
+            expanded = search.expanded();
+        }
+        return new Result(solution, System.nanoTime() - start, expanded);
+    }
+
+    /**
+     * Solves a range of the batch, splitting it in half while it is large enough
+     * to be worth sharing with idle workers.
+     */
+    private class SolveTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MazeProblem[] batch;
+        private final Result[] results;
+        private final int from, to;
+
+        SolveTask(MazeProblem[] batch, Result[] results, int from, int to) {
+            this.batch = batch;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    results[i] = solveOne(batch[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveTask(batch, results, from, middle), new SolveTask(batch, results, middle, to));
+        }
+
+    }
+
+    /**
+     * The outcome of solving one problem of a batch.
+     */
+    public static class Result {
+
+        private final List<String> solution;
+        private final long nanos;
+        private final int expanded;
+
+        Result(List<String> solution, long nanos, int expanded) {
+            this.solution = solution;
+            this.nanos = nanos;
+            this.expanded = expanded;
+        }
+
+        /**
+         * @return The actions that solve the problem, or null if there is no
+         *         solution.
+         */
+        public List<String> solution() {
+            return solution;
+        }
+
+        /**
+         * @return Wall-clock time spent compiling and solving the problem, in
+         *         nanoseconds.
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        /**
+         * @return The number of states expanded, or -1 for engines that do not
+         *         count them (KEY_ROUTER).
+         */
+        public int expanded() {
+            return expanded;
+        }
+
+    }
+
+}
@@ -0,0 +1,304 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Point-to-point search for single legs of a route, such as the leg from the
+ * current position to the next key, ignoring keys. One search runs forward
+ * from the leg's start and one backward from its end, and they meet in the
+ * middle: where one-sided Dijkstra settles a disk of cells out to the leg's
+ * cost, the two sides settle two disks out to about half of it, which in
+ * open areas is about half the cells. Guided by the Manhattan distance, both
+ * sides become A*; the gain over one-sided A* is smaller, and mostly comes
+ * from the dead ends of winding mazes, which each side explores only up to
+ * the middle.<br>
+ * Edge costs are asymmetric, since a move costs the tile it enters: the
+ * forward search pays the tile of each cell it moves into, while the backward
+ * search, which follows moves in reverse, pays the tile of each cell it moves
+ * out of. Both sides share one average potential, half the Manhattan distance
+ * to the end minus half that to the start, so the reduced cost of a move is
+ * the same whichever side relaxes it and is never negative. Keys are doubled
+ * to keep them integral.<br>
+ * The search tracks the cheapest path found through any cell both sides have
+ * reached, and stops once the lowest keys of the two queues add up to at
+ * least that path's doubled cost plus twice the Manhattan distance of the leg;
+ * no cheaper path can then remain, as each one would have to pass through an
+ * unsettled cell on both sides. Per-cell arrays are stamped with a search
+ * number, so no search pays to clear them.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class BidirectionalSearch {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int UNREACHABLE = BitboardDistances.UNREACHABLE;
+
+    private final CompiledMaze maze;
+    private final boolean guided;
+    private final Side forward, backward;
+    private int search;
+    private int cost;
+    private long expanded;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Prepares to search legs of the given MazeProblem.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     */
+    public BidirectionalSearch(MazeProblem problem) {
+        this(new CompiledMaze(problem), true);
+    }
+
+    /**
+     * Prepares to search legs of the given maze, which must not change while
+     * this search is in use.
+     *
+     * @param maze   The CompiledMaze to search in.
+     * @param guided True for bidirectional A*, false for bidirectional
+     *               Dijkstra, which ignores where the other end lies.
+     */
+    public BidirectionalSearch(CompiledMaze maze, boolean guided) {
+        this.maze = maze;
+        this.guided = guided;
+        this.forward = new Side(maze.cellCount());
+        this.backward = new Side(maze.cellCount());
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Finds a cheapest path between two cells, ignoring keys.
+     *
+     * @param from The cell to start from.
+     * @param to   The cell to reach.
+     * @return The moves of an optimal path, or null if either cell is a wall or
+     *         there is no path between them.
+     */
+    public PackedPath leg(int from, int to) {
+        cost = UNREACHABLE;
+        expanded = 0;
+        if (maze.isWall(from) || maze.isWall(to)) {
+            return null;
+        }
+        if (from == to) {
+            cost = 0;
+            return new PackedPath();
+        }
+        if (++search == 0) {
+            forward.reset();
+            backward.reset();
+            search = 1;
+        }
+        int span = distance(from, to), best = UNREACHABLE, meet = -1;
+        int toPotential = potential(to, from, to, true), fromPotential = potential(from, from, to, false);
+        forward.start(from, forward.key(0, -fromPotential, span), search);
+        backward.start(to, backward.key(0, -toPotential, span), search);
+
+        while (!forward.queue.isEmpty() && !backward.queue.isEmpty()) {
+            // A cheaper path would have to leave both queues below their
+            // minimum keys, or one of them below the key of its far end
+            int forwardMin = forward.queue.minF(), backwardMin = backward.queue.minF();
+            if (best < UNREACHABLE && (forwardMin >= forward.key(best, toPotential, span)
+                    || backwardMin >= backward.key(best, fromPotential, span)
+                    || forwardMin + backwardMin >= 2 * best + 2 * span)) {
+                break;
+            }
+            // Grow the smaller frontier, which keeps the two sides balanced
+            // where the maze opens up at only one end, and take turns on ties,
+            // as in corridors
+            int forwardSize = forward.queue.size(), backwardSize = backward.queue.size();
+            boolean isForward = forwardSize < backwardSize || forwardSize == backwardSize && (expanded & 1) == 0;
+            Side side = isForward ? forward : backward, other = isForward ? backward : forward;
+            int cell = side.queue.pop(), g = side.costs[cell];
+            if (side.queue.poppedF() != side.key(g, potential(cell, from, to, isForward), span)
+                    || side.settled[cell] == search) {
+                continue;
+            }
+            side.settled[cell] = search;
+            expanded++;
+
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (maze.isWall(next)) {
+                    continue;
+                }
+                // Forward moves enter next; backward ones undo a move out of
+                // next into cell, so they pay for cell
+                int nextCost = g + maze.cost(isForward ? next : cell);
+                if (side.reached[next] != search || nextCost < side.costs[next]) {
+                    side.reached[next] = search;
+                    side.costs[next] = nextCost;
+                    side.moves[next] = (byte) (isForward ? direction : CompiledMaze.opposite(direction));
+                    side.queue.push(next, side.key(nextCost, potential(next, from, to, isForward), span),
+                            2 * nextCost);
+                }
+                if (other.reached[next] == search && side.costs[next] + other.costs[next] < best) {
+                    best = side.costs[next] + other.costs[next];
+                    meet = next;
+                }
+            }
+        }
+        if (meet == -1) {
+            return null;
+        }
+        cost = best;
+        return path(from, to, meet);
+    }
+
+    /**
+     * Returns a sequence of actions between two positions, ignoring keys.
+     *
+     * @param fromCol Column to start from.
+     * @param fromRow Row to start from.
+     * @param toCol   Column to end on.
+     * @param toRow   Row to end on.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         either position is a wall or out of bounds, or there is no path
+     *         between them.
+     */
+    public List<String> route(int fromCol, int fromRow, int toCol, int toRow) {
+        int cols = maze.width() - 2, rows = maze.height() - 2;
+        if (fromCol < 0 || toCol < 0 || fromCol >= cols || toCol >= cols
+                || fromRow < 0 || toRow < 0 || fromRow >= rows || toRow >= rows) {
+            return null;
+        }
+        PackedPath path = leg(maze.cell(fromCol, fromRow), maze.cell(toCol, toRow));
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * @return The cost of the leg found by the most recent search, or
+     *         BitboardDistances.UNREACHABLE if it found none.
+     */
+    public int cost() {
+        return cost;
+    }
+
+    /**
+     * @return The number of cells settled by the most recent search, over both
+     *         sides.
+     */
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @param a A cell.
+     * @param b Another cell.
+     * @return The Manhattan distance between the cells.
+     */
+    private int distance(int a, int b) {
+        int width = maze.width();
+        return Math.abs(a % width - b % width) + Math.abs(a / width - b / width);
+    }
+
+    /**
+     * The doubled average potential of a cell, as the given side sees it: the
+     * forward side's is the distance to the end minus that to the start, and
+     * the backward side's is its negation.
+     *
+     * @param cell      A cell.
+     * @param from      The leg's start.
+     * @param to        The leg's end.
+     * @param isForward True for the forward side.
+     * @return The potential, between -span and span.
+     */
+    private int potential(int cell, int from, int to, boolean isForward) {
+        if (!guided) {
+            return 0;
+        }
+        int difference = distance(cell, to) - distance(cell, from);
+        return isForward ? difference : -difference;
+    }
+
+    /**
+     * Joins the forward path to the meeting cell with the backward path from it.
+     *
+     * @param from The leg's start.
+     * @param to   The leg's end.
+     * @param meet A cell on a cheapest path that both sides reached.
+     * @return The moves of the path.
+     */
+    private PackedPath path(int from, int to, int meet) {
+        int length = 0;
+        for (int cell = meet; cell != from; length++) {
+            cell = maze.neighbor(cell, CompiledMaze.opposite(forward.moves[cell]));
+        }
+        int forwardLength = length;
+        for (int cell = meet; cell != to; length++) {
+            cell = maze.neighbor(cell, backward.moves[cell]);
+        }
+        PackedPath result = new PackedPath(length);
+        int index = forwardLength;
+        for (int cell = meet; cell != from;) {
+            result.set(--index, forward.moves[cell]);
+            cell = maze.neighbor(cell, CompiledMaze.opposite(forward.moves[cell]));
+        }
+        index = forwardLength;
+        for (int cell = meet; cell != to;) {
+            result.set(index++, backward.moves[cell]);
+            cell = maze.neighbor(cell, backward.moves[cell]);
+        }
+        return result;
+    }
+
+    /**
+     * The state of one direction of the search. A cell's cost and move are
+     * valid only where reached holds the current search number: the forward
+     * side's move is the one that entered the cell, the backward side's the
+     * one that leaves it toward the leg's end.
+     */
+    private static class Side {
+
+        final int[] costs, reached, settled;
+        final byte[] moves;
+        final BucketQueue queue = new BucketQueue();
+
+        Side(int cells) {
+            this.costs = new int[cells];
+            this.reached = new int[cells];
+            this.settled = new int[cells];
+            this.moves = new byte[cells];
+        }
+
+        /**
+         * Clears the queue and reaches the side's first cell.
+         *
+         * @param cell   The cell the side starts from.
+         * @param key    The cell's key.
+         * @param search The current search number.
+         */
+        void start(int cell, int key, int search) {
+            queue.clear();
+            reached[cell] = search;
+            costs[cell] = 0;
+            queue.push(cell, key, 0);
+        }
+
+        /**
+         * @param g         The side's cost of the cell.
+         * @param potential The cell's doubled potential on this side.
+         * @param span      The Manhattan distance of the leg.
+         * @return The cell's key: its doubled cost plus potential, shifted up
+         *         by span so that it is never negative.
+         */
+        int key(int g, int potential, int span) {
+            return 2 * g + potential + span;
+        }
+
+        /**
+         * Forgets every search, for when the search number wraps around.
+         */
+        void reset() {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+        }
+
+    }
+
+}
@@ -0,0 +1,301 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Single-source distance fields computed with a bit-parallel breadth-first
+ * wavefront. The maze is held as bitboards, one bit per cell and 64 cells per
+ * long, row by row: one of the cells that cost 1 to enter and one of the mud
+ * cells that cost 3. Each layer of the wavefront, the set of cells first
+ * reached at some cost, is advanced into the next one with shifts and masks
+ * that move up to 64 cells at a time, with no priority queue at all.<br>
+ * Mud is handled with delayed layers: a mud cell touched by the wavefront at
+ * cost d is set aside in the layer that settles at d + 3, and joins the
+ * wavefront then, unless nothing reached it sooner. Only words the wavefront
+ * touches are visited, so a layer costs time in proportion to its own size
+ * rather than the maze's.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class BitboardDistances {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    /** Distance reported for cells that cannot be reached. */
+    public static final int UNREACHABLE = KeyRouter.UNREACHABLE;
+    private static final int MUD_DELAY = 3;
+
+    private final CompiledMaze maze;
+    private final int width, wordsPerRow;
+    // Bit (col & 63) of word row * wordsPerRow + (col >>> 6) stands for a cell
+    private final long[] plain, mud;
+
+    // Wavefront state: cells already reached or set aside, the current layer,
+    // the layer being built, and mud cells set aside for each of the next
+    // MUD_DELAY layers, each with the list of its nonzero words
+    private final long[] seen;
+    private long[] layer, next;
+    private int[] layerWords, nextWords;
+    private int layerCount, nextCount;
+    private final long[][] delayed = new long[MUD_DELAY][];
+    private final int[][] delayedWords = new int[MUD_DELAY][];
+    private final int[] delayedCount = new int[MUD_DELAY];
+    private int cost;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Builds the bitboards of the given MazeProblem.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     */
+    public BitboardDistances(MazeProblem problem) {
+        this(new CompiledMaze(problem));
+    }
+
+    /**
+     * Builds the bitboards of the given maze.
+     *
+     * @param maze The CompiledMaze to compute distances in.
+     */
+    public BitboardDistances(CompiledMaze maze) {
+        this.maze = maze;
+        this.width = maze.width();
+        this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        int words = maze.height() * wordsPerRow;
+        this.plain = new long[words];
+        this.mud = new long[words];
+        for (int cell = 0; cell < maze.cellCount(); cell++) {
+            if (!maze.isWall(cell)) {
+                long[] board = maze.cost(cell) == 1 ? plain : mud;
+                board[word(cell)] |= 1L << (cell % width);
+            }
+        }
+        this.seen = new long[words];
+        this.layer = new long[words];
+        this.next = new long[words];
+        this.layerWords = new int[words];
+        this.nextWords = new int[words];
+        for (int slot = 0; slot < MUD_DELAY; slot++) {
+            delayed[slot] = new long[words];
+            delayedWords[slot] = new int[words];
+        }
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Computes the cost of the cheapest path from the source to every cell.
+     *
+     * @param source The cell to start from.
+     * @return Array of length cellCount holding the cost to each cell, or
+     *         UNREACHABLE where there is no path.
+     */
+    public int[] distances(int source) {
+        int[] result = new int[maze.cellCount()];
+        distances(source, -1, result);
+        return result;
+    }
+
+    /**
+     * Computes the costs from the source to every cell, stopping once the target
+     * is reached. Every cell cheaper to reach than the target is filled in by
+     * then, so shortest paths to the target can be walked back through result.
+     *
+     * @param source The cell to start from.
+     * @param target The cell to stop at, or -1 to reach every cell.
+     * @param result Array of length cellCount to receive the costs, or
+     *               UNREACHABLE where no cost has been found.
+     */
+    void distances(int source, int target, int[] result) {
+        Arrays.fill(result, UNREACHABLE);
+        result[source] = 0;
+        start(source);
+        while (source != target && advance()) {
+            for (int i = 0; i < layerCount; i++) {
+                int word = layerWords[i], base = (word / wordsPerRow) * width + (word % wordsPerRow) * Long.SIZE;
+                for (long bits = layer[word]; bits != 0; bits &= bits - 1) {
+                    int cell = base + Long.numberOfTrailingZeros(bits);
+                    result[cell] = cost;
+                    if (cell == target) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the cost of the cheapest path between every pair of the points
+     * key planning works with: point 0 is the initial state and point k + 1 is
+     * key k. Each search stops as soon as it has reached every point.
+     *
+     * @return costs[from][to] for every pair of points, or UNREACHABLE where
+     *         there is no path or a key is missing from the maze.
+     */
+    public int[][] keyDistances() {
+        int points = maze.keyCount() + 1, present = 0;
+        int[] pointCells = new int[points];
+        pointCells[0] = maze.start();
+        long[] targets = new long[plain.length];
+        for (int point = 0; point < points; point++) {
+            if (point > 0) {
+                pointCells[point] = maze.keyCell(point - 1);
+            }
+            if (pointCells[point] != -1) {
+                targets[word(pointCells[point])] |= 1L << (pointCells[point] % width);
+                present++;
+            }
+        }
+
+        int[][] costs = new int[points][points];
+        for (int from = 0; from < points; from++) {
+            Arrays.fill(costs[from], UNREACHABLE);
+            if (pointCells[from] == -1) {
+                continue;
+            }
+            costs[from][from] = 0;
+            start(pointCells[from]);
+            for (int found = 1; found < present && advance();) {
+                for (int i = 0; i < layerCount; i++) {
+                    int word = layerWords[i];
+                    for (long bits = layer[word] & targets[word]; bits != 0; bits &= bits - 1) {
+                        int cell = (word / wordsPerRow) * width + (word % wordsPerRow) * Long.SIZE
+                                + Long.numberOfTrailingZeros(bits);
+                        for (int to = 0; to < points; to++) {
+                            if (pointCells[to] == cell) {
+                                costs[from][to] = cost;
+                                found++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Resets the wavefront to the single source cell at cost 0, clearing what
+     * an earlier search that stopped early left behind.
+     *
+     * @param source The cell to start from.
+     */
+    private void start(int source) {
+        Arrays.fill(seen, 0);
+        for (int i = 0; i < layerCount; i++) {
+            layer[layerWords[i]] = 0;
+        }
+        for (int slot = 0; slot < MUD_DELAY; slot++) {
+            for (int i = 0; i < delayedCount[slot]; i++) {
+                delayed[slot][delayedWords[slot][i]] = 0;
+            }
+            delayedCount[slot] = 0;
+        }
+        int word = word(source);
+        long bit = 1L << (source % width);
+        seen[word] = layer[word] = bit;
+        layerWords[0] = word;
+        layerCount = 1;
+        cost = 0;
+    }
+
+    /**
+     * Replaces the current layer with the cells first reached at one more unit
+     * of cost: open cells next to the current layer, plus the mud cells set
+     * aside for this cost. Mud cells next to the current layer are set aside
+     * MUD_DELAY layers ahead.
+     *
+     * @return False if the wavefront has died out, leaving the layer unchanged.
+     */
+    private boolean advance() {
+        int pending = layerCount;
+        for (int slot = 0; slot < MUD_DELAY; slot++) {
+            pending += delayedCount[slot];
+        }
+        if (pending == 0) {
+            return false;
+        }
+        int setAside = cost % MUD_DELAY, joining = (cost + 1) % MUD_DELAY;
+        nextCount = 0;
+        // Each layer word pushes its bits one cell left and right within the
+        // word, across into the words beside it when they fall off an end, and
+        // into the same word of the rows above and below. Layer words are never
+        // in the padding ring, so none of these words is out of bounds, and
+        // bits carried past the end of a row land on walls
+        for (int i = 0; i < layerCount; i++) {
+            int word = layerWords[i];
+            long bits = layer[word];
+            reach(word, bits << 1 | bits >>> 1, setAside);
+            if ((bits & 1) != 0) {
+                reach(word - 1, bits << 63, setAside);
+            }
+            if (bits < 0) {
+                reach(word + 1, bits >>> 63, setAside);
+            }
+            reach(word - wordsPerRow, bits, setAside);
+            reach(word + wordsPerRow, bits, setAside);
+        }
+        // Mud cells set aside MUD_DELAY layers ago settle now
+        long[] settling = delayed[joining];
+        for (int i = 0; i < delayedCount[joining]; i++) {
+            int word = delayedWords[joining][i];
+            if (next[word] == 0) {
+                nextWords[nextCount++] = word;
+            }
+            next[word] |= settling[word];
+            settling[word] = 0;
+        }
+        delayedCount[joining] = 0;
+
+        for (int i = 0; i < layerCount; i++) {
+            layer[layerWords[i]] = 0;
+        }
+        long[] board = layer;
+        layer = next;
+        next = board;
+        int[] words = layerWords;
+        layerWords = nextWords;
+        nextWords = words;
+        layerCount = nextCount;
+        cost++;
+        return true;
+    }
+
+    /**
+     * Marks the unseen open cells among the given bits of a word as reached:
+     * cells that cost 1 join the next layer, and mud cells are set aside.
+     *
+     * @param word     A bitboard word index.
+     * @param bits     The cells of that word next to the current layer.
+     * @param setAside The delayed slot that settles MUD_DELAY layers from now.
+     */
+    private void reach(int word, long bits, int setAside) {
+        long reached = bits & ~seen[word];
+        long open = reached & plain[word], muddy = reached & mud[word];
+        if (open != 0) {
+            if (next[word] == 0) {
+                nextWords[nextCount++] = word;
+            }
+            next[word] |= open;
+        }
+        if (muddy != 0) {
+            if (delayed[setAside][word] == 0) {
+                delayedWords[setAside][delayedCount[setAside]++] = word;
+            }
+            delayed[setAside][word] |= muddy;
+        }
+        seen[word] |= open | muddy;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The index of the bitboard word that holds the cell's bit.
+     */
+    private int word(int cell) {
+        return (cell / width) * wordsPerRow + (cell % width) / Long.SIZE;
+    }
+
+}
@@ -0,0 +1,187 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.Arrays;
+
+/**
+ * Monotone bucket queue (Dial's algorithm) for searches whose priorities are
+ * small non-negative integers that never fall far behind the current minimum,
+ * as with A* under a consistent heuristic, where an expansion only creates
+ * entries with f between the current f and f + (1 or 3 + the heuristic step).
+ * <br>
+ * Entries live in a circular array of buckets indexed by f. Within a bucket,
+ * entries are kept in int stacks indexed by h = f - g, so the entry with the
+ * lowest h, i.e., the highest g, is popped first. Push and pop are O(1)
+ * amortized, against O(log n) for a binary heap.
+ */
+class BucketQueue {
+
+    private Bucket[] ring = new Bucket[16];
+    private int size, minF, maxF, poppedF;
+
+    /**
+     * @return True if the queue holds no entries.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of entries in the queue.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, keeping the allocated buckets for reuse.
+     */
+    void clear() {
+        for (Bucket bucket : ring) {
+            if (bucket != null) {
+                bucket.clear();
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds the given state. Priorities may be pushed in any order as long as the
+     * spread between the smallest and largest f in the queue stays small.
+     *
+     * @param state The state to add.
+     * @param f     The priority of the state; must be at least g.
+     * @param g     The cost of the path to the state, used to break ties.
+     */
+    void push(int state, int f, int g) {
+        if (size == 0) {
+            minF = maxF = f;
+        } else {
+            minF = Math.min(minF, f);
+            maxF = Math.max(maxF, f);
+            ensureSpan();
+        }
+        int slot = f & (ring.length - 1);
+        Bucket bucket = ring[slot];
+        if (bucket == null) {
+            bucket = ring[slot] = new Bucket();
+        }
+        if (bucket.count == 0) {
+            bucket.f = f;
+        }
+        bucket.push(f - g, state);
+        size++;
+    }
+
+    /**
+     * Removes and returns a state with the lowest f, preferring the highest g
+     * among those. The queue must not be empty.
+     *
+     * @return The state removed.
+     */
+    int pop() {
+        Bucket bucket = ring[minF() & (ring.length - 1)];
+        size--;
+        poppedF = minF;
+        return bucket.pop();
+    }
+
+    /**
+     * @return The lowest f of any entry, without removing it. The queue must
+     *         not be empty.
+     */
+    int minF() {
+        Bucket bucket;
+        while ((bucket = ring[minF & (ring.length - 1)]) == null || bucket.count == 0) {
+            minF++;
+        }
+        return minF;
+    }
+
+    /**
+     * @return The f of the state returned by the most recent pop.
+     */
+    int poppedF() {
+        return poppedF;
+    }
+
+    /**
+     * Doubles the ring until every f from minF to maxF fits within one lap,
+     * moving the existing buckets to their slots in the larger ring.
+     */
+    private void ensureSpan() {
+        if (maxF - minF < ring.length) {
+            return;
+        }
+        int length = ring.length;
+        while (maxF - minF >= length) {
+            length *= 2;
+        }
+        Bucket[] grown = new Bucket[length];
+        for (Bucket bucket : ring) {
+            if (bucket != null && bucket.count > 0) {
+                grown[bucket.f & (length - 1)] = bucket;
+            }
+        }
+        ring = grown;
+    }
+
+    /**
+     * All entries sharing one f: a stack of states for each h = f - g.
+     */
+    private static class Bucket {
+
+        int[][] stacks = new int[4][];
+        int[] sizes = new int[4];
+        int count, minH = Integer.MAX_VALUE, f;
+
+        /**
+         * Pushes a state onto the stack for the given h.
+         *
+         * @param h     The heuristic part of the entry's f.
+         * @param state The state to push.
+         */
+        void push(int h, int state) {
+            if (h >= stacks.length) {
+                int length = Math.max(h + 1, stacks.length * 2);
+                stacks = Arrays.copyOf(stacks, length);
+                sizes = Arrays.copyOf(sizes, length);
+            }
+            int[] stack = stacks[h];
+            if (stack == null) {
+                stack = stacks[h] = new int[16];
+            } else if (sizes[h] == stack.length) {
+                stack = stacks[h] = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[sizes[h]++] = state;
+            minH = Math.min(minH, h);
+            count++;
+        }
+
+        /**
+         * Pops a state from the non-empty stack with the lowest h.
+         *
+         * @return The state popped.
+         */
+        int pop() {
+            while (sizes[minH] == 0) {
+                minH++;
+            }
+            int state = stacks[minH][--sizes[minH]];
+            if (--count == 0) {
+                minH = Integer.MAX_VALUE;
+            }
+            return state;
+        }
+
+        /**
+         * Empties every stack, keeping their arrays.
+         */
+        void clear() {
+            Arrays.fill(sizes, 0);
+            count = 0;
+            minH = Integer.MAX_VALUE;
+        }
+
+    }
+
+}
@@ -0,0 +1,454 @@
+package main.pathfinder.informed.trikey;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Compact, search-ready form of a MazeProblem. The maze is stored as one byte
+ * per tile in a row-major grid that is padded with a ring of walls, so every
+ * in-bounds cell has four in-bounds neighbors at fixed index offsets and no
+ * bounds checks are needed during search. The grid lives in a ByteBuffer, so
+ * it can be a heap array, off-heap memory, or a memory-mapped file laid out
+ * by {@link MazeLoader}.<br>
+ * Search states are packed into a single int of the format
+ * <code>(cell &lt;&lt; keyCount) | keysCollected</code>, so that dense int[]
+ * arrays indexed by state can replace maps of MazeState objects.
+ */
+public class CompiledMaze {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // Tile codes; open and mud codes double as the cost of entering the tile,
+    // and key k is stored as KEY + k
+    static final byte WALL = 0, OPEN = 1, MUD = 3, KEY = 8;
+
+    // Direction indexes, ordered to match ACTIONS
+    static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+    static final String[] ACTIONS = { "U", "D", "L", "R" };
+
+    // Largest number of keys whose collected-keys mask fits in an int
+    public static final int MAX_KEYS = 30;
+
+    private final ByteBuffer tiles;
+    private final int width, height, start, keyCount, allKeys;
+    private final int[] offsets, keyCells;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Compiles the given MazeProblem. Key tiles are assigned bits in the order of
+     * their sorted tile Strings, e.g., "1" is bit 0, "2" bit 1, "3" bit 2.
+     *
+     * @param problem The MazeProblem to compile.
+     * @throws IllegalArgumentException If any key tile appears more than once, or
+     *                                  there are more than MAX_KEYS key tiles.
+     */
+    public CompiledMaze(MazeProblem problem) {
+        this.width = problem.cols() + 2;
+        this.height = problem.rows() + 2;
+        this.tiles = ByteBuffer.allocate(width * height);
+        this.offsets = new int[] { -width, width, -1, 1 };
+
+        String keyChars = "";
+        for (String key : new TreeSet<>(problem.getKeyTiles())) {
+            keyChars += key;
+        }
+        if (keyChars.length() > MAX_KEYS) {
+            throw new IllegalArgumentException("Mazes may have at most " + MAX_KEYS + " keys");
+        }
+        this.keyCount = keyChars.length();
+        this.allKeys = (1 << keyCount) - 1;
+        this.keyCells = new int[keyCount];
+        Arrays.fill(keyCells, -1);
+
+        int foundStart = -1;
+        for (int row = 0; row < problem.rows(); row++) {
+            for (int col = 0; col < problem.cols(); col++) {
+                int cell = cell(col, row);
+                char tile = problem.tile(col, row);
+                switch (tile) {
+                case 'X':
+                    tiles.put(cell, WALL);
+                    break;
+                case 'M':
+                    tiles.put(cell, MUD);
+                    break;
+                case 'I':
+                    foundStart = cell;
+                    tiles.put(cell, OPEN);
+                    break;
+                case '.':
+                    tiles.put(cell, OPEN);
+                    break;
+                default:
+                    int key = keyChars.indexOf(tile);
+                    if (keyCells[key] != -1) {
+                        throw new IllegalArgumentException("Maze contains key " + tile + " more than once");
+                    }
+                    keyCells[key] = cell;
+                    tiles.put(cell, (byte) (KEY + key));
+                }
+            }
+        }
+        this.start = foundStart;
+    }
+
+    /**
+     * Copies the given CompiledMaze onto the heap, so that the copy's tiles can be
+     * changed with {@link #setTile(int, byte)} without affecting the original,
+     * even if the original is a read-only mapped file.
+     *
+     * @param other The CompiledMaze to copy.
+     */
+    public CompiledMaze(CompiledMaze other) {
+        this.width = other.width;
+        this.height = other.height;
+        byte[] copy = new byte[other.tiles.capacity()];
+        other.tiles.get(0, copy);
+        this.tiles = ByteBuffer.wrap(copy);
+        this.offsets = other.offsets.clone();
+        this.keyCells = other.keyCells.clone();
+        this.keyCount = other.keyCount;
+        this.allKeys = other.allKeys;
+        this.start = other.start;
+    }
+
+    /**
+     * Wraps an already laid out grid without copying it; see {@link MazeLoader}.
+     *
+     * @param tiles    The padded grid of tile codes, width * height bytes long.
+     * @param width    Width of the padded grid.
+     * @param height   Height of the padded grid.
+     * @param start    The cell of the initial state, or -1 if there is none.
+     * @param keyCells The cell of each key, or -1 where a key is missing.
+     * @throws IllegalArgumentException If there are more than MAX_KEYS keys.
+     */
+    CompiledMaze(ByteBuffer tiles, int width, int height, int start, int[] keyCells) {
+        if (keyCells.length > MAX_KEYS) {
+            throw new IllegalArgumentException("Mazes may have at most " + MAX_KEYS + " keys");
+        }
+        this.tiles = tiles;
+        this.width = width;
+        this.height = height;
+        this.offsets = new int[] { -width, width, -1, 1 };
+        this.start = start;
+        this.keyCells = keyCells.clone();
+        this.keyCount = keyCells.length;
+        this.allKeys = (1 << keyCount) - 1;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * @return Width of the padded grid, i.e., the number of maze columns + 2.
+     */
+    public int width() {
+        return this.width;
+    }
+
+    /**
+     * @return Height of the padded grid, i.e., the number of maze rows + 2.
+     */
+    public int height() {
+        return this.height;
+    }
+
+    /**
+     * @return Number of cells in the padded grid; every cell index is below this.
+     */
+    public int cellCount() {
+        return this.tiles.capacity();
+    }
+
+    /**
+     * Converts a maze position into its cell index in the padded grid.
+     *
+     * @param col Column of the position in the original maze.
+     * @param row Row of the position in the original maze.
+     * @return The cell index.
+     */
+    public int cell(int col, int row) {
+        return (row + 1) * width + col + 1;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The column of the cell in the original maze.
+     */
+    public int col(int cell) {
+        return cell % width - 1;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The row of the cell in the original maze.
+     */
+    public int row(int cell) {
+        return cell / width - 1;
+    }
+
+    /**
+     * @return The cell of the initial state, or -1 if the maze has none.
+     */
+    public int start() {
+        return this.start;
+    }
+
+    /**
+     * @return The number of key tiles that must be collected.
+     */
+    public int keyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * @return The key mask with every key collected, i.e., the goal mask.
+     */
+    public int allKeys() {
+        return this.allKeys;
+    }
+
+    /**
+     * @param key A key index in [0, keyCount).
+     * @return The cell holding that key, or -1 if it is missing from the maze.
+     */
+    public int keyCell(int key) {
+        return this.keyCells[key];
+    }
+
+    /**
+     * @return True if every key appears in the maze and there is an initial state.
+     */
+    public boolean isComplete() {
+        for (int cell : keyCells) {
+            if (cell == -1) {
+                return false;
+            }
+        }
+        return start != -1;
+    }
+
+    /**
+     * Flood fills the open cells reachable from the initial state. Moves can
+     * always be undone, so every key being among them is exactly the condition
+     * for a solution to exist, and it costs one pass over the cells rather than
+     * a search over every (cell, keys) state.
+     *
+     * @return True if the maze is complete and every key can be reached.
+     */
+    public boolean keysReachable() {
+        if (!isComplete()) {
+            return false;
+        }
+        boolean[] seen = new boolean[cellCount()];
+        int[] stack = new int[64];
+        int size = 0, keys = 0;
+        seen[start] = true;
+        stack[size++] = start;
+        while (size > 0) {
+            int cell = stack[--size];
+            keys |= keyBit(cell);
+            for (int offset : offsets) {
+                int next = cell + offset;
+                if (tiles.get(next) != WALL && !seen[next]) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    seen[next] = true;
+                    stack[size++] = next;
+                }
+            }
+        }
+        return keys == allKeys;
+    }
+
+    /**
+     * @return A read-only view of the padded grid of tile codes.
+     */
+    ByteBuffer tiles() {
+        return tiles.asReadOnlyBuffer();
+    }
+
+    /**
+     * Replaces the tile of a cell that holds neither a key nor the initial state.
+     *
+     * @param cell A cell index inside the padding ring.
+     * @param tile One of WALL, OPEN, MUD.
+     * @throws IllegalArgumentException If the cell is a key, the initial state, or
+     *                                  part of the padding ring.
+     */
+    void setTile(int cell, byte tile) {
+        int col = cell % width, row = cell / width;
+        if (col == 0 || row == 0 || col == width - 1 || row >= height - 1 || cell == start
+                || tiles.get(cell) >= KEY) {
+            throw new IllegalArgumentException("Only open, mud, and wall tiles inside the maze can change");
+        }
+        tiles.put(cell, tile);
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return True if the cell is a wall (including the padding ring).
+     */
+    public boolean isWall(int cell) {
+        return tiles.get(cell) == WALL;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The cost of moving into the cell; same as MazeProblem.getCost.
+     */
+    public int cost(int cell) {
+        return tiles.get(cell) == MUD ? 3 : 1;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The mask bit of the key on the cell, or 0 if it holds no key.
+     */
+    public int keyBit(int cell) {
+        int tile = tiles.get(cell);
+        return tile >= KEY ? 1 << (tile - KEY) : 0;
+    }
+
+    /**
+     * @param cell      A cell index.
+     * @param direction One of UP, DOWN, LEFT, RIGHT.
+     * @return The index of the adjacent cell in that direction.
+     */
+    public int neighbor(int cell, int direction) {
+        return cell + offsets[direction];
+    }
+
+    /**
+     * @param direction One of UP, DOWN, LEFT, RIGHT.
+     * @return The direction that undoes it.
+     */
+    public static int opposite(int direction) {
+        return direction ^ 1;
+    }
+
+    /**
+     * Finds the direction of a single move between two adjacent cells.
+     *
+     * @param from The cell moved from.
+     * @param to   The adjacent cell moved into.
+     * @return One of UP, DOWN, LEFT, RIGHT.
+     */
+    public int direction(int from, int to) {
+        int delta = to - from;
+        return delta == -width ? UP : delta == width ? DOWN : delta == -1 ? LEFT : RIGHT;
+    }
+
+    /**
+     * @return Number of packed states, i.e., the length of dense per-state arrays.
+     * @throws IllegalStateException If the state space does not fit in an int.
+     */
+    public int stateCount() {
+        long count = (long) tiles.capacity() << keyCount;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many cells and keys to pack states into an int");
+        }
+        return (int) count;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @param keys A mask of collected keys.
+     * @return The packed state.
+     */
+    public int state(int cell, int keys) {
+        return (cell << keyCount) | keys;
+    }
+
+    /**
+     * @param state A packed state.
+     * @return The cell of the state.
+     */
+    public int cellOf(int state) {
+        return state >>> keyCount;
+    }
+
+    /**
+     * @param state A packed state.
+     * @return The mask of collected keys of the state.
+     */
+    public int keysOf(int state) {
+        return state & allKeys;
+    }
+
+    /**
+     * Writes the states reachable in one move from the given state into out,
+     * collecting the key on the entered tile, if any. Does not allocate.
+     *
+     * @param state A packed state.
+     * @param out   Array of at least 4 elements to receive the successors.
+     * @return The number of successors written to the front of out.
+     */
+    public int successors(int state, int[] out) {
+        int cell = state >>> keyCount, keys = state & allKeys, count = 0;
+        for (int offset : offsets) {
+            int next = cell + offset, tile = tiles.get(next);
+            if (tile != WALL) {
+                out[count++] = (next << keyCount) | keys | (tile >= KEY ? 1 << (tile - KEY) : 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Admissible and consistent estimate of the cost of collecting the remaining
+     * keys: every uncollected key is at least its Manhattan distance away, so
+     * the farthest one bounds the cost of collecting them all.
+     *
+     * @param state A packed state.
+     * @return The Manhattan-distance heuristic of the state.
+     */
+    public int manhattan(int state) {
+        int cell = state >>> keyCount, keys = state & allKeys, col = cell % width, row = cell / width, result = 0;
+        for (int key = 0; key < keyCount; key++) {
+            if ((keys & (1 << key)) == 0) {
+                int keyCell = keyCells[key];
+                result = Math.max(result, Math.abs(col - keyCell % width) + Math.abs(row - keyCell / width));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Admissible and consistent estimate that accounts for having to visit the
+     * uncollected keys one after another: for any two of them, a and b, the
+     * cheapest route first reaches one of them and then still has to travel
+     * from there to the other, so it costs at least min(d(a), d(b)) + d(a, b)
+     * in Manhattan distances. The largest such sum over all pairs, or the
+     * distance to the only remaining key, is the estimate; it is never below
+     * {@link #manhattan(int)} and is O(k^2) in the number of keys.
+     *
+     * @param state A packed state.
+     * @return The key-tour heuristic of the state.
+     */
+    public int keyTour(int state) {
+        int cell = state >>> keyCount, keys = state & allKeys, col = cell % width, row = cell / width, result = 0;
+        for (int a = 0; a < keyCount; a++) {
+            if ((keys & (1 << a)) != 0) {
+                continue;
+            }
+            int aCol = keyCells[a] % width, aRow = keyCells[a] / width;
+            int toA = Math.abs(col - aCol) + Math.abs(row - aRow);
+            result = Math.max(result, toA);
+            for (int b = a + 1; b < keyCount; b++) {
+                if ((keys & (1 << b)) != 0) {
+                    continue;
+                }
+                int bCol = keyCells[b] % width, bRow = keyCells[b] / width;
+                int toB = Math.abs(col - bCol) + Math.abs(row - bRow);
+                result = Math.max(result, Math.min(toA, toB) + Math.abs(aCol - bCol) + Math.abs(aRow - bRow));
+            }
+        }
+        return result;
+    }
+
+}
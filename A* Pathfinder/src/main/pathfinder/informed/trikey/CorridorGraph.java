@@ -0,0 +1,341 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Reduced graph of a maze for searches that only need the places where a
+ * route can choose. Two passes shrink the maze before any search runs:<br>
+ * - Dead-end filling: an open cell with at most one open neighbor that holds
+ * neither a key nor the initial state can only be entered and left the same
+ * way, so no optimal route uses it; it is turned into a wall, which may in
+ * turn make its neighbor a dead end, until none remain.<br>
+ * - Corridor collapse: of the cells left, those with exactly two open
+ * neighbors and nothing on them are corridor cells. Every other cell is a
+ * node, and each node gets up to one edge per direction to the node at the
+ * far end of the corridor that direction leads into, weighted with the sum
+ * of the costs of the cells it enters, mud included. Edges are directed,
+ * since the two ends of a corridor can cost differently to enter.<br>
+ * A* then runs over (node, keys collected) states, of which there are far
+ * fewer than (cell, keys collected) states in maze-like maps, and the edges
+ * of the solution are walked again to expand them back into moves.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class CorridorGraph {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int NO_EDGE = -1;
+
+    // The maze with its dead ends filled, walked again to expand edges into moves
+    private final CompiledMaze maze;
+    private final int filledCount;
+
+    // Node n sits on nodeCells[n]; its edge in direction d leads to node
+    // edgeTargets[4 * n + d], or NO_EDGE, at a cost of edgeCosts[4 * n + d]
+    private final int[] nodeCells;
+    private final int[] edgeTargets, edgeCosts;
+    private final int nodeCount, edgeCount, startNode;
+
+    // Cost of the cells entered by the most recent walk()
+    private int walkCost;
+    private int expanded;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Builds the reduced graph of the given MazeProblem.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     */
+    public CorridorGraph(MazeProblem problem) {
+        this(new CompiledMaze(problem));
+    }
+
+    /**
+     * Builds the reduced graph of the given maze, which is left unchanged.
+     *
+     * @param maze The CompiledMaze to reduce.
+     */
+    public CorridorGraph(CompiledMaze maze) {
+        this.maze = new CompiledMaze(maze);
+        this.filledCount = fillDeadEnds();
+
+        int cells = this.maze.cellCount(), count = 0;
+        int[] nodeOf = new int[cells], cellsOfNodes = new int[64];
+        Arrays.fill(nodeOf, NO_EDGE);
+        for (int cell = 0; cell < cells; cell++) {
+            if (!this.maze.isWall(cell) && isNode(cell)) {
+                if (count == cellsOfNodes.length) {
+                    cellsOfNodes = Arrays.copyOf(cellsOfNodes, count * 2);
+                }
+                nodeOf[cell] = count;
+                cellsOfNodes[count++] = cell;
+            }
+        }
+        this.nodeCount = count;
+        this.nodeCells = Arrays.copyOf(cellsOfNodes, count);
+        // Without an initial state there is nothing to solve, see solvePacked()
+        this.startNode = this.maze.start() == -1 ? -1 : nodeOf[this.maze.start()];
+
+        this.edgeTargets = new int[4 * count];
+        this.edgeCosts = new int[4 * count];
+        Arrays.fill(edgeTargets, NO_EDGE);
+        int edges = 0;
+        for (int node = 0; node < count; node++) {
+            for (int direction = 0; direction < 4; direction++) {
+                if (this.maze.isWall(this.maze.neighbor(nodeCells[node], direction))) {
+                    continue;
+                }
+                int end = walk(nodeCells[node], direction, null);
+                // A corridor that loops back to its own node never shortens a route
+                if (end != nodeCells[node]) {
+                    edgeTargets[4 * node + direction] = nodeOf[end];
+                    edgeCosts[4 * node + direction] = walkCost;
+                    edges++;
+                }
+            }
+        }
+        this.edgeCount = edges;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Finds an optimal action sequence that collects every key in the maze.
+     *
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         there is no solution.
+     */
+    public List<String> solve() {
+        PackedPath path = solvePacked();
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * Finds an optimal sequence of moves that collects every key in the maze,
+     * searching the reduced graph and expanding its edges into moves.
+     *
+     * @return The packed moves, or null if there is no solution.
+     * @throws IllegalStateException If the reduced state space does not fit in
+     *                               an int.
+     */
+    public PackedPath solvePacked() {
+        expanded = 0;
+        if (!maze.isComplete()) {
+            return null;
+        }
+        int keyCount = maze.keyCount(), allKeys = maze.allKeys();
+        long stateCount = (long) nodeCount << keyCount;
+        if (stateCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many nodes and keys to pack states into an int");
+        }
+        // State s is node s >>> keyCount with keys s & allKeys; parentEdges holds
+        // the direction of the edge that reached it from parents, -1 for the root
+        int[] cost = new int[(int) stateCount], parents = new int[(int) stateCount];
+        byte[] parentEdges = new byte[(int) stateCount];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        LongMinHeap open = new LongMinHeap();
+
+        int initial = startNode << keyCount;
+        cost[initial] = 0;
+        parents[initial] = -1;
+        open.push((long) estimate(initial) << 32 | initial);
+
+        while (!open.isEmpty()) {
+            long entry = open.pop();
+            int state = (int) entry, g = cost[state];
+            // Skip entries superseded by a cheaper path pushed later
+            if ((int) (entry >>> 32) != g + estimate(state)) {
+                continue;
+            }
+            int node = state >>> keyCount, keys = state & allKeys;
+            if (keys == allKeys) {
+                return path(state, parents, parentEdges);
+            }
+            expanded++;
+
+            for (int direction = 0; direction < 4; direction++) {
+                int target = edgeTargets[4 * node + direction];
+                if (target == NO_EDGE) {
+                    continue;
+                }
+                int next = (target << keyCount) | keys | maze.keyBit(nodeCells[target]);
+                int nextCost = g + edgeCosts[4 * node + direction];
+                if (nextCost < cost[next]) {
+                    cost[next] = nextCost;
+                    parents[next] = state;
+                    parentEdges[next] = (byte) direction;
+                    open.push((long) (nextCost + estimate(next)) << 32 | next);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of nodes of the reduced graph.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The number of directed edges of the reduced graph.
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return The number of dead-end cells that were filled in as walls.
+     */
+    public int filledCount() {
+        return filledCount;
+    }
+
+    /**
+     * @return The number of states expanded by the most recent search.
+     */
+    public int expanded() {
+        return expanded;
+    }
+
+    /**
+     * Fills dead ends in as walls until none remain, checking the neighbors of
+     * each filled cell again, since filling may have made them dead ends too.
+     *
+     * @return The number of cells filled.
+     */
+    private int fillDeadEnds() {
+        int[] stack = new int[64];
+        int size = 0, filled = 0;
+        for (int cell = 0; cell < maze.cellCount(); cell++) {
+            if (isDeadEnd(cell)) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                stack[size++] = cell;
+            }
+        }
+        while (size > 0) {
+            int cell = stack[--size];
+            if (!isDeadEnd(cell)) {
+                continue;
+            }
+            maze.setTile(cell, CompiledMaze.WALL);
+            filled++;
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (isDeadEnd(next)) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = next;
+                }
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return True if the cell is open, holds neither a key nor the initial
+     *         state, and has at most one open neighbor.
+     */
+    private boolean isDeadEnd(int cell) {
+        return !maze.isWall(cell) && cell != maze.start() && maze.keyBit(cell) == 0 && openNeighbors(cell) <= 1;
+    }
+
+    /**
+     * @param cell An open cell index.
+     * @return True if the cell holds a key or the initial state, or does not
+     *         have exactly two open neighbors.
+     */
+    private boolean isNode(int cell) {
+        return cell == maze.start() || maze.keyBit(cell) != 0 || openNeighbors(cell) != 2;
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The number of open cells adjacent to it.
+     */
+    private int openNeighbors(int cell) {
+        int count = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            if (!maze.isWall(maze.neighbor(cell, direction))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Follows the corridor that leaves a node in the given direction up to the
+     * node at its far end, setting walkCost to the cost of the cells entered.
+     *
+     * @param from      The cell of the node to leave.
+     * @param direction The direction of the first move, toward an open cell.
+     * @param moves     A path to append every move to, or null.
+     * @return The cell of the node reached.
+     */
+    private int walk(int from, int direction, PackedPath moves) {
+        int cell = maze.neighbor(from, direction), cost = maze.cost(cell);
+        if (moves != null) {
+            moves.add(direction);
+        }
+        while (!isNode(cell)) {
+            // Leave a corridor cell through its one open side we did not enter by
+            int back = CompiledMaze.opposite(direction);
+            direction = 0;
+            while (direction == back || maze.isWall(maze.neighbor(cell, direction))) {
+                direction++;
+            }
+            cell = maze.neighbor(cell, direction);
+            cost += maze.cost(cell);
+            if (moves != null) {
+                moves.add(direction);
+            }
+        }
+        walkCost = cost;
+        return cell;
+    }
+
+    /**
+     * @param state A reduced state.
+     * @return The key-tour heuristic of the state's node and keys, which stays
+     *         consistent across edges since each costs at least its length.
+     */
+    private int estimate(int state) {
+        int keyCount = maze.keyCount();
+        return maze.keyTour(maze.state(nodeCells[state >>> keyCount], state & maze.allKeys()));
+    }
+
+    /**
+     * Follows the parents back from the goal state, then walks the edges of the
+     * solution forward to expand them into moves.
+     *
+     * @param goal        The goal state reached.
+     * @param parents     The parent state of every reached state.
+     * @param parentEdges The direction of the edge that reached every state.
+     * @return The moves from the initial state to goal.
+     */
+    private PackedPath path(int goal, int[] parents, byte[] parentEdges) {
+        int legs = 0;
+        for (int state = goal; parents[state] != -1; state = parents[state]) {
+            legs++;
+        }
+        int[] legStates = new int[legs];
+        for (int state = goal; parents[state] != -1; state = parents[state]) {
+            legStates[--legs] = state;
+        }
+        PackedPath result = new PackedPath();
+        for (int state : legStates) {
+            walk(nodeCells[parents[state] >>> maze.keyCount()], parentEdges[state], result);
+        }
+        return result;
+    }
+
+}
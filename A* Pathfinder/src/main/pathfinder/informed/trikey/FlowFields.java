@@ -0,0 +1,240 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared flow fields for many agents collecting the same keys in one maze.
+ * Instead of each agent searching from its own start, one field is computed
+ * per set of keys still to collect: a reverse Dijkstra search that gives, for
+ * every cell, the cost of collecting all of those keys from it and the move
+ * to take first. An agent then steps by looking up its cell in the field of
+ * its remaining keys, with no search of its own.<br>
+ * The field of a single remaining key is the plain reverse distance field of
+ * that key. With several keys left, each key is seeded with the cost of the
+ * cheapest tour through the others starting from it, so that following the
+ * field heads for whichever key leads to the cheapest finish; those tour costs
+ * come from a Held-Karp table over the key-to-key costs, built once.<br>
+ * Fields are computed on first use and cached, so a crowd of agents only pays
+ * for the stages it actually reaches. Lookups may run on several threads at
+ * once.
+ */
+public class FlowFields {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int UNREACHABLE = BitboardDistances.UNREACHABLE;
+    private static final byte NO_MOVE = -1;
+
+    private final CompiledMaze maze;
+    private final int keyCount;
+    // tours[mask * keyCount + key] is the cheapest cost of collecting the keys
+    // in mask starting from key's cell, with key itself not in mask
+    private final int[] tours;
+    private final Map<Integer, Field> fields = new ConcurrentHashMap<>();
+
+    /**
+     * Cost to finish and first move from every cell, for one set of remaining keys.
+     */
+    private static class Field {
+        final int[] costs;
+        final byte[] moves;
+
+        Field(int cells) {
+            costs = new int[cells];
+            moves = new byte[cells];
+        }
+    }
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Prepares flow fields for the given MazeProblem.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     * @throws IllegalArgumentException If the maze has more than
+     *                                  {@link KeyRouter#MAX_KEYS} keys.
+     */
+    public FlowFields(MazeProblem problem) {
+        this(new CompiledMaze(problem));
+    }
+
+    /**
+     * Prepares flow fields for the given maze, computing the costs between keys
+     * and the tour table; the fields themselves are computed as agents need them.
+     *
+     * @param maze The CompiledMaze the agents move in; its tiles must not change.
+     * @throws IllegalArgumentException If the maze has more than
+     *                                  {@link KeyRouter#MAX_KEYS} keys.
+     */
+    public FlowFields(CompiledMaze maze) {
+        if (maze.keyCount() > KeyRouter.MAX_KEYS) {
+            throw new IllegalArgumentException("At most " + KeyRouter.MAX_KEYS + " keys are supported");
+        }
+        this.maze = maze;
+        this.keyCount = maze.keyCount();
+        // Point 0 is the initial state and point k + 1 is key k
+        int[][] costs = new BitboardDistances(maze).keyDistances();
+        int full = maze.allKeys();
+        this.tours = new int[(full + 1) * keyCount];
+        Arrays.fill(tours, UNREACHABLE);
+        // A key missing from the maze cannot end a tour, so its tours stay
+        // UNREACHABLE
+        for (int key = 0; key < keyCount; key++) {
+            if (maze.keyCell(key) != -1) {
+                tours[key] = 0;
+            }
+        }
+        // Masks only grow by adding keys, so smaller tours are always ready
+        for (int mask = 1; mask <= full; mask++) {
+            for (int key = 0; key < keyCount; key++) {
+                if ((mask & (1 << key)) != 0) {
+                    continue;
+                }
+                int best = UNREACHABLE;
+                for (int rest = mask; rest != 0; rest &= rest - 1) {
+                    int next = Integer.numberOfTrailingZeros(rest);
+                    int tour = tours[(mask & ~(1 << next)) * keyCount + next];
+                    if (tour < UNREACHABLE && costs[key + 1][next + 1] < UNREACHABLE) {
+                        best = Math.min(best, costs[key + 1][next + 1] + tour);
+                    }
+                }
+                tours[mask * keyCount + key] = best;
+            }
+        }
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Looks up the cost of collecting every remaining key from a state.
+     *
+     * @param state A packed state.
+     * @return The cost of an optimal finish, 0 if every key is collected, or
+     *         {@link BitboardDistances#UNREACHABLE} if some key cannot be reached.
+     */
+    public int costToFinish(int state) {
+        int remaining = remaining(state);
+        return remaining == 0 ? 0 : field(remaining).costs[maze.cellOf(state)];
+    }
+
+    /**
+     * Looks up the first move of an optimal finish from a state.
+     *
+     * @param state A packed state.
+     * @return The direction of the move, or -1 if every key is collected or
+     *         some key cannot be reached.
+     */
+    public int nextMove(int state) {
+        int remaining = remaining(state);
+        return remaining == 0 ? NO_MOVE : field(remaining).moves[maze.cellOf(state)];
+    }
+
+    /**
+     * Takes the first move of an optimal finish from a state.
+     *
+     * @param state A packed state.
+     * @return The state the move leads to, collecting any key on it, or -1 if
+     *         there is no move to take.
+     */
+    public int step(int state) {
+        int direction = nextMove(state);
+        if (direction == NO_MOVE) {
+            return -1;
+        }
+        int next = maze.neighbor(maze.cellOf(state), direction);
+        return maze.state(next, maze.keysOf(state) | maze.keyBit(next));
+    }
+
+    /**
+     * Follows the fields from a state until every key is collected.
+     *
+     * @param state A packed state.
+     * @return The moves of an optimal finish, or null if some key cannot be
+     *         reached.
+     */
+    public PackedPath path(int state) {
+        PackedPath result = new PackedPath();
+        for (int direction = nextMove(state); direction != NO_MOVE; direction = nextMove(state)) {
+            result.add(direction);
+            state = step(state);
+        }
+        return remaining(state) == 0 ? result : null;
+    }
+
+    /**
+     * @return The number of fields computed so far.
+     */
+    public int fieldCount() {
+        return fields.size();
+    }
+
+    /**
+     * @param state A packed state.
+     * @return The mask of keys still to collect, counting a key on the state's
+     *         own cell as collected.
+     */
+    private int remaining(int state) {
+        return maze.allKeys() & ~(maze.keysOf(state) | maze.keyBit(maze.cellOf(state)));
+    }
+
+    /**
+     * @param remaining A nonempty mask of keys still to collect.
+     * @return The field for that mask, computed now if no agent needed it before.
+     */
+    private Field field(int remaining) {
+        return fields.computeIfAbsent(remaining, this::compute);
+    }
+
+    /**
+     * Reverse Dijkstra search from the remaining keys, each seeded with the cost
+     * of the cheapest tour through the others starting from it. Moves run from
+     * a cell into the cell it was reached from, and cost that cell's tile.
+     *
+     * @param remaining A nonempty mask of keys still to collect.
+     * @return The field for that mask.
+     */
+    private Field compute(int remaining) {
+        Field field = new Field(maze.cellCount());
+        int[] costs = field.costs;
+        Arrays.fill(costs, UNREACHABLE);
+        Arrays.fill(field.moves, NO_MOVE);
+        // Seeds can be far apart in cost, too far for a BucketQueue's ring
+        LongMinHeap open = new LongMinHeap();
+        for (int keys = remaining; keys != 0; keys &= keys - 1) {
+            int key = Integer.numberOfTrailingZeros(keys);
+            int tour = tours[(remaining & ~(1 << key)) * keyCount + key], cell = maze.keyCell(key);
+            if (tour < UNREACHABLE) {
+                costs[cell] = tour;
+                open.push((long) tour << 32 | cell);
+            }
+        }
+
+        while (!open.isEmpty()) {
+            long entry = open.pop();
+            int cell = (int) entry, cost = costs[cell];
+            if ((int) (entry >>> 32) != cost) {
+                continue;
+            }
+            // No path through a remaining key beats the tour seeded on it, so
+            // agents stop at the key and move on to the next key set's field
+            for (int direction = 0; direction < 4; direction++) {
+                int previous = maze.neighbor(cell, direction);
+                if (maze.isWall(previous)) {
+                    continue;
+                }
+                int previousCost = cost + maze.cost(cell);
+                if (previousCost < costs[previous]) {
+                    costs[previous] = previousCost;
+                    field.moves[previous] = (byte) CompiledMaze.opposite(direction);
+                    open.push((long) previousCost << 32 | previous);
+                }
+            }
+        }
+        return field;
+    }
+
+}
@@ -0,0 +1,392 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Hash-distributed parallel A* (HDA*) for single queries too large for one
+ * core. Every packed state has an owner, one of the worker threads, picked by
+ * hashing the state. A worker runs A* over the states it owns with its own
+ * open list, and whenever it generates a state owned by another worker, it
+ * sends that state with its cost and parent to the owner instead. Messages
+ * travel in batches over lock-free ConcurrentLinkedQueues, so workers never
+ * block on each other.<br>
+ * Since each state is only ever written by its owner, the dense per-state
+ * arrays are shared without locks. Workers expand states out of global f
+ * order, so a state can be reached again later at a lower cost; it is then
+ * reopened and expanded again, as in A* with an inconsistent ordering.<br>
+ * The search ends once no worker has a state with f below the cost of the
+ * best goal found, and no message is in flight; a single counter of busy
+ * workers plus unread batches detects that without locks. Every state on an
+ * optimal path is then either expanded or never needed, so the best goal is
+ * optimal.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+class HashDistributedSearch {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // States per message batch, and expansions between flushes of partial batches
+    private static final int BATCH_SIZE = 64, FLUSH_INTERVAL = 32;
+    private static final long NO_GOAL = Long.MAX_VALUE;
+
+    private final int workerCount;
+
+    // Per-state cost and parent, only valid where visited equals the current
+    // generation; each entry is only written by the worker that owns the state
+    private int[] cost = new int[0], parent = new int[0], visited = new int[0];
+    private int generation;
+    private CompiledMaze maze;
+    private Worker[] workers;
+
+    // The best goal found as (cost << 32) | state, and the number of busy
+    // workers plus unread batches, which reaches 0 only when the search is over
+    private final AtomicLong bestGoal = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile boolean done;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private int expanded;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a search with one worker per available processor.
+     */
+    HashDistributedSearch() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a search with the given number of worker threads.
+     *
+     * @param workerCount The number of worker threads per query.
+     * @throws IllegalArgumentException If workerCount is less than 1.
+     */
+    HashDistributedSearch(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.workerCount = workerCount;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Finds an optimal action sequence that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         there is no solution.
+     */
+    List<String> solve(CompiledMaze maze) {
+        PackedPath path = solvePacked(maze);
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * Finds an optimal sequence of moves that collects every key in the maze,
+     * running one thread per worker until the search ends.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return The packed moves, or null if there is no solution.
+     * @throws IllegalStateException If the calling thread is interrupted.
+     */
+    PackedPath solvePacked(CompiledMaze maze) {
+        expanded = 0;
+        if (!maze.isComplete()) {
+            return null;
+        }
+        prepare(maze);
+        int initial = maze.state(maze.start(), 0);
+        workers[owner(initial)].receive(initial, 0, -1);
+
+        Thread[] threads = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            threads[i] = new Thread(workers[i], "hda-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    // Stop the workers, but still wait for them to leave the arrays
+                    interrupted = true;
+                    done = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching");
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Search worker failed", failure.get());
+        }
+        for (Worker worker : workers) {
+            expanded += worker.expanded;
+        }
+        long goal = bestGoal.get();
+        return goal == NO_GOAL ? null : path((int) goal);
+    }
+
+    /**
+     * @return The number of states expanded by the most recent search, summed
+     *         over its workers and counting every reopened expansion.
+     */
+    int expanded() {
+        return expanded;
+    }
+
+    /**
+     * Grows the per-state arrays if needed, starts a new search generation, and
+     * creates fresh workers with every worker counted as busy.
+     *
+     * @param maze The CompiledMaze to search.
+     */
+    private void prepare(CompiledMaze maze) {
+        int states = maze.stateCount();
+        this.maze = maze;
+        if (cost.length < states) {
+            cost = new int[states];
+            parent = new int[states];
+            visited = new int[states];
+            generation = 0;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+        }
+        bestGoal.set(NO_GOAL);
+        work.set(workerCount);
+        done = false;
+        failure.set(null);
+    }
+
+    /**
+     * Spreads neighboring states across workers with a multiplicative hash, so
+     * that every part of the frontier keeps every worker busy.
+     *
+     * @param state A packed state.
+     * @return The index of the worker that owns it.
+     */
+    private int owner(int state) {
+        return (int) (((state * 0x9E3779B9L) & 0xFFFFFFFFL) * workerCount >>> 32);
+    }
+
+    /**
+     * @return The cost of the best goal found so far, or Integer.MAX_VALUE.
+     */
+    private int incumbent() {
+        long goal = bestGoal.get();
+        return goal == NO_GOAL ? Integer.MAX_VALUE : (int) (goal >>> 32);
+    }
+
+    /**
+     * Follows the parent array back from the goal state to recover the moves.
+     * Parents only change when a state's cost drops, so costs fall strictly
+     * along the chain and it always leads back to the initial state.
+     *
+     * @param goal The goal state reached.
+     * @return The moves from the initial state to goal.
+     */
+    private PackedPath path(int goal) {
+        int length = 0;
+        for (int state = goal; parent[state] != -1; state = parent[state]) {
+            length++;
+        }
+        PackedPath result = new PackedPath(length);
+        for (int state = goal; parent[state] != -1; state = parent[state]) {
+            result.set(--length, maze.direction(maze.cellOf(parent[state]), maze.cellOf(state)));
+        }
+        return result;
+    }
+
+    /**
+     * One thread's share of the search: the open list of the states it owns,
+     * its inbox of batches from other workers, and a partial outgoing batch
+     * for every other worker. A batch is an int[] of (state, cost, parent)
+     * triples.
+     */
+    private class Worker implements Runnable {
+
+        private final int index;
+        private final ConcurrentLinkedQueue<int[]> inbox = new ConcurrentLinkedQueue<>();
+        private final LongMinHeap open = new LongMinHeap();
+        private final int[][] outgoing = new int[workerCount][3 * BATCH_SIZE];
+        private final int[] outgoingSize = new int[workerCount], successors = new int[4];
+        private int expanded;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                search();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+                done = true;
+            }
+        }
+
+        /**
+         * Expands owned states and reads batches until the search is over. An idle
+         * worker leaves the work count and a worker that reads a batch while idle
+         * rejoins it before the batch is counted as read, so the count cannot
+         * reach 0 while any batch is unread.
+         */
+        private void search() {
+            boolean busy = true;
+            while (!done) {
+                for (int[] batch; (batch = inbox.poll()) != null;) {
+                    if (!busy) {
+                        work.incrementAndGet();
+                        busy = true;
+                    }
+                    for (int i = 0; i < batch.length; i += 3) {
+                        receive(batch[i], batch[i + 1], batch[i + 2]);
+                    }
+                    work.decrementAndGet();
+                }
+                if (expandNext()) {
+                    if (expanded % FLUSH_INTERVAL == 0) {
+                        flush();
+                    }
+                    continue;
+                }
+                flush();
+                if (busy) {
+                    busy = false;
+                    if (work.decrementAndGet() == 0) {
+                        done = true;
+                    }
+                } else if (work.get() == 0) {
+                    done = true;
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Handles a state reached at the given cost, by this worker or another: a
+         * cheaper path is recorded, and the state is queued, or offered as the
+         * best goal if it holds every key.
+         *
+         * @param state A packed state owned by this worker.
+         * @param g     The cost of the path reaching it.
+         * @param from  The packed state it was reached from, -1 for the root.
+         */
+        void receive(int state, int g, int from) {
+            if (visited[state] == generation && g >= cost[state]) {
+                return;
+            }
+            visited[state] = generation;
+            cost[state] = g;
+            parent[state] = from;
+            if (maze.keysOf(state) == maze.allKeys()) {
+                long goal = ((long) g << 32) | state;
+                bestGoal.accumulateAndGet(goal, Math::min);
+            } else {
+                open.push(((long) (g + maze.keyTour(state)) << 32) | state);
+            }
+        }
+
+        /**
+         * Expands the owned state of lowest f, unless none could lead to a
+         * cheaper goal than the best found so far.
+         *
+         * @return True if a state was expanded.
+         */
+        private boolean expandNext() {
+            int incumbent = incumbent();
+            while (!open.isEmpty()) {
+                long entry = open.peek();
+                int state = (int) entry, f = (int) (entry >>> 32), g = cost[state];
+                if (f >= incumbent) {
+                    return false;
+                }
+                open.pop();
+                // Skip entries superseded by a cheaper path received later
+                if (f != g + maze.keyTour(state)) {
+                    continue;
+                }
+                expanded++;
+                for (int i = 0, count = maze.successors(state, successors); i < count; i++) {
+                    int next = successors[i], nextCost = g + maze.cost(maze.cellOf(next));
+                    if (nextCost + maze.keyTour(next) >= incumbent) {
+                        continue;
+                    }
+                    int to = owner(next);
+                    if (to == index) {
+                        receive(next, nextCost, state);
+                    } else {
+                        send(to, next, nextCost, state);
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Adds a state to the outgoing batch for its owner, sending the batch once
+         * it is full.
+         *
+         * @param to    The index of the owning worker.
+         * @param state A packed state owned by that worker.
+         * @param g     The cost of the path reaching it.
+         * @param from  The packed state it was reached from.
+         */
+        private void send(int to, int state, int g, int from) {
+            int[] batch = outgoing[to];
+            int size = outgoingSize[to];
+            batch[size] = state;
+            batch[size + 1] = g;
+            batch[size + 2] = from;
+            outgoingSize[to] = size + 3;
+            if (size + 3 == batch.length) {
+                flush(to);
+            }
+        }
+
+        /**
+         * Sends every partial outgoing batch.
+         */
+        private void flush() {
+            for (int to = 0; to < workerCount; to++) {
+                flush(to);
+            }
+        }
+
+        /**
+         * Sends the outgoing batch for the given worker, if it holds any states.
+         * The batch is counted before it is queued, so the work count covers it
+         * as soon as it can be read.
+         *
+         * @param to The index of the receiving worker.
+         */
+        private void flush(int to) {
+            if (outgoingSize[to] == 0) {
+                return;
+            }
+            work.incrementAndGet();
+            workers[to].inbox.offer(Arrays.copyOf(outgoing[to], outgoingSize[to]));
+            outgoingSize[to] = 0;
+        }
+    }
+
+}
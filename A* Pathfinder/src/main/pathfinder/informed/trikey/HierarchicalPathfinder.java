@@ -0,0 +1,535 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Hierarchical pathfinder (HPA*) for very large mazes. The grid is cut into
+ * square clusters, and wherever two neighboring clusters share a run of open
+ * cells along their border, some of those cell pairs become transitions: a
+ * node on each side, joined by the single move across. Within every cluster,
+ * the cost between each pair of its nodes is precomputed by a Dijkstra search
+ * confined to the cluster, mud included. Together these form a small abstract
+ * graph that is built once and reused for every query.<br>
+ * A query connects its points (the initial state and keys, or two positions)
+ * to the nodes of their clusters, finds the cheapest routes on the abstract
+ * graph, and only then refines each abstract edge into moves with a search
+ * inside the one cluster it crosses.<br>
+ * With exact refinement, every open border pair is a transition, so any path
+ * in the maze maps onto the abstract graph and solutions are optimal. Without
+ * it, each border run gets one transition in its middle, or one at each end
+ * if it is long, which keeps the graph far smaller at the price of solutions
+ * that can be slightly longer than optimal.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class HierarchicalPathfinder {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int UNREACHABLE = KeyRouter.UNREACHABLE;
+    // Border runs at least this long get a transition at both ends when not exact
+    private static final int LONG_ENTRANCE = 6;
+
+    private final CompiledMaze maze;
+    private final int clusterSize, clustersWide, cols, rows;
+    private final boolean exact;
+
+    // Abstract graph: node n sits on nodeCells[n], and nodeOf maps back from cells
+    private final int[] nodeOf;
+    private int[] nodeCells = new int[64];
+    private int nodeCount;
+    private final Graph graph;
+    private final int[][] clusterNodes;
+
+    // Scratch space for searches confined to one cluster, indexed by local cell
+    private final int[] localDist;
+    private final byte[] localParents;
+    private final BucketQueue open = new BucketQueue();
+    private int originCol, originRow;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Builds the abstract graph of the given MazeProblem.
+     *
+     * @param problem     The MazeProblem to build the graph for.
+     * @param clusterSize Side length of the square clusters, in cells.
+     * @param exact       True to make every open border pair a transition, so that
+     *                    solutions are optimal.
+     */
+    public HierarchicalPathfinder(MazeProblem problem, int clusterSize, boolean exact) {
+        this(new CompiledMaze(problem), clusterSize, exact);
+    }
+
+    /**
+     * Builds the abstract graph of an already compiled maze; see
+     * {@link #HierarchicalPathfinder(MazeProblem, int, boolean)}.
+     *
+     * @param maze        The CompiledMaze to build the graph for.
+     * @param clusterSize Side length of the square clusters, in cells.
+     * @param exact       True to make every open border pair a transition.
+     * @throws IllegalArgumentException If clusterSize is less than 1.
+     */
+    public HierarchicalPathfinder(CompiledMaze maze, int clusterSize, boolean exact) {
+        if (clusterSize < 1) {
+            throw new IllegalArgumentException("Cluster size must be at least 1");
+        }
+        this.maze = maze;
+        this.clusterSize = clusterSize;
+        this.exact = exact;
+        this.cols = maze.width() - 2;
+        this.rows = maze.height() - 2;
+        this.clustersWide = (cols + clusterSize - 1) / clusterSize;
+        int clustersHigh = (rows + clusterSize - 1) / clusterSize;
+        this.localDist = new int[clusterSize * clusterSize];
+        this.localParents = new byte[clusterSize * clusterSize];
+        this.nodeOf = new int[maze.cellCount()];
+        Arrays.fill(nodeOf, -1);
+
+        // Transitions across every border between horizontally, then vertically,
+        // adjacent clusters
+        EdgeList edges = new EdgeList();
+        for (int col = clusterSize; col < cols; col += clusterSize) {
+            for (int row = 0; row < rows; row += clusterSize) {
+                addEntrances(maze.cell(col - 1, row), maze.cell(col, row), maze.width(),
+                        Math.min(clusterSize, rows - row), edges);
+            }
+        }
+        for (int row = clusterSize; row < rows; row += clusterSize) {
+            for (int col = 0; col < cols; col += clusterSize) {
+                addEntrances(maze.cell(col, row - 1), maze.cell(col, row), 1,
+                        Math.min(clusterSize, cols - col), edges);
+            }
+        }
+
+        // Group the nodes by cluster, then connect each pair within a cluster
+        // by the cost of the cheapest path that stays inside it
+        int[] counts = new int[clustersWide * clustersHigh];
+        for (int node = 0; node < nodeCount; node++) {
+            counts[clusterOf(nodeCells[node])]++;
+        }
+        this.clusterNodes = new int[counts.length][];
+        for (int cluster = 0; cluster < counts.length; cluster++) {
+            clusterNodes[cluster] = new int[counts[cluster]];
+            counts[cluster] = 0;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            int cluster = clusterOf(nodeCells[node]);
+            clusterNodes[cluster][counts[cluster]++] = node;
+        }
+        for (int[] nodes : clusterNodes) {
+            for (int from : nodes) {
+                searchCluster(nodeCells[from], false);
+                for (int to : nodes) {
+                    if (to != from) {
+                        addIfReachable(edges, from, to, nodeCells[to]);
+                    }
+                }
+            }
+        }
+        this.graph = new Graph(nodeCount, edges);
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Returns a sequence of actions that collects every key piece, optimal when
+     * built with exact refinement; see {@link Pathfinder#solve(MazeProblem)}.
+     *
+     * @return A List of Strings representing actions that solve the problem of the
+     *         format: ["R", "R", "L", ...], or null if there is no solution
+     * @throws IllegalArgumentException If the maze has more than
+     *                                  {@link KeyRouter#MAX_KEYS} keys.
+     */
+    public List<String> solve() {
+        if (maze.keyCount() > KeyRouter.MAX_KEYS) {
+            throw new IllegalArgumentException("At most " + KeyRouter.MAX_KEYS + " keys are supported");
+        }
+        if (!maze.isComplete()) {
+            return null;
+        }
+        int keys = maze.keyCount();
+        int[] points = new int[keys + 1];
+        points[0] = maze.start();
+        for (int key = 0; key < keys; key++) {
+            points[key + 1] = maze.keyCell(key);
+        }
+        return route(points, true);
+    }
+
+    /**
+     * Returns a sequence of actions between two positions, ignoring keys;
+     * optimal when built with exact refinement.
+     *
+     * @param fromCol Column to start from.
+     * @param fromRow Row to start from.
+     * @param toCol   Column to end on.
+     * @param toRow   Row to end on.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         either position is a wall or out of bounds, or there is no path
+     *         between them.
+     */
+    public List<String> route(int fromCol, int fromRow, int toCol, int toRow) {
+        int cols = maze.width() - 2, rows = maze.height() - 2;
+        if (fromCol < 0 || toCol < 0 || fromCol >= cols || toCol >= cols
+                || fromRow < 0 || toRow < 0 || fromRow >= rows || toRow >= rows) {
+            return null;
+        }
+        int from = maze.cell(fromCol, fromRow), to = maze.cell(toCol, toRow);
+        if (maze.isWall(from) || maze.isWall(to)) {
+            return null;
+        }
+        return route(new int[] { from, to }, false);
+    }
+
+    /**
+     * @return The number of nodes in the abstract graph.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Routes through the given points on the abstract graph, then refines the
+     * route into moves.
+     *
+     * @param points     Cells to visit, starting with points[0].
+     * @param anyOrder   True to visit points[1..] in their cheapest order, false
+     *                   to visit them in the given order.
+     * @return The list of actions, or null if some point cannot be reached.
+     */
+    private List<String> route(int[] points, boolean anyOrder) {
+        // Points join the graph as nodes nodeCount + i, through overlay edges to
+        // and from the nodes of their cluster and to the points that share it
+        int pointCount = points.length, total = nodeCount + pointCount;
+        EdgeList edges = new EdgeList();
+        for (int point = 0; point < pointCount; point++) {
+            int cell = points[point], cluster = clusterOf(cell);
+            searchCluster(cell, false);
+            for (int node : clusterNodes[cluster]) {
+                addIfReachable(edges, nodeCount + point, node, nodeCells[node]);
+            }
+            for (int other = 0; other < pointCount; other++) {
+                if (other != point && clusterOf(points[other]) == cluster) {
+                    addIfReachable(edges, nodeCount + point, nodeCount + other, points[other]);
+                }
+            }
+            searchCluster(cell, true);
+            for (int node : clusterNodes[cluster]) {
+                addIfReachable(edges, node, nodeCount + point, nodeCells[node]);
+            }
+        }
+        Graph overlay = new Graph(total, edges);
+
+        int searches = anyOrder ? pointCount : pointCount - 1;
+        int[][] costs = new int[pointCount][pointCount], parents = new int[searches][];
+        int[] dist = new int[total];
+        LongMinHeap heap = new LongMinHeap();
+        for (int from = 0; from < searches; from++) {
+            parents[from] = searchAbstract(nodeCount + from, overlay, dist, heap);
+            for (int to = 0; to < pointCount; to++) {
+                costs[from][to] = dist[nodeCount + to];
+            }
+        }
+
+        int[] order;
+        if (anyOrder) {
+            order = KeyRouter.bestOrder(costs, pointCount - 1);
+            if (order == null) {
+                return null;
+            }
+        } else {
+            order = new int[pointCount - 1];
+            for (int leg = 0; leg < order.length; leg++) {
+                if (costs[leg][leg + 1] >= UNREACHABLE) {
+                    return null;
+                }
+                order[leg] = leg;
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (int leg = 0, from = 0; leg < order.length; from = order[leg++] + 1) {
+            appendLeg(points, parents[from], nodeCount + order[leg] + 1, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds an edge weighted by the cost the most recent cluster search found for
+     * the given cell, unless the search did not reach it.
+     *
+     * @param edges The list to add the edge to.
+     * @param from  The node the edge leaves.
+     * @param to    The node the edge enters.
+     * @param cell  The cell whose searched cost is the edge's weight.
+     */
+    private void addIfReachable(EdgeList edges, int from, int to, int cell) {
+        int cost = localDist[local(cell)];
+        if (cost < UNREACHABLE) {
+            edges.add(from, to, cost);
+        }
+    }
+
+    /**
+     * Adds transitions for each run of open cell pairs along one border between
+     * two clusters.
+     *
+     * @param first  The first cell of the border on one side.
+     * @param facing The cell across the border from first.
+     * @param step   The cell index offset between consecutive border cells.
+     * @param length The number of cells along the border.
+     * @param edges  The list to add the edges across the border to.
+     */
+    private void addEntrances(int first, int facing, int step, int length, EdgeList edges) {
+        int run = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && !maze.isWall(first + i * step) && !maze.isWall(facing + i * step)) {
+                run++;
+                continue;
+            }
+            if (run == 0) {
+                continue;
+            }
+            int start = i - run, end = i - 1;
+            if (exact) {
+                for (int j = start; j <= end; j++) {
+                    addTransition(first + j * step, facing + j * step, edges);
+                }
+            } else if (run < LONG_ENTRANCE) {
+                int middle = (start + end) / 2;
+                addTransition(first + middle * step, facing + middle * step, edges);
+            } else {
+                addTransition(first + start * step, facing + start * step, edges);
+                addTransition(first + end * step, facing + end * step, edges);
+            }
+            run = 0;
+        }
+    }
+
+    /**
+     * Adds a node on each of two adjacent cells, if not already present, and the
+     * moves between them in both directions.
+     *
+     * @param a     A cell on one side of a border.
+     * @param b     The adjacent cell on the other side.
+     * @param edges The list to add the edges to.
+     */
+    private void addTransition(int a, int b, EdgeList edges) {
+        int nodeA = nodeAt(a), nodeB = nodeAt(b);
+        edges.add(nodeA, nodeB, maze.cost(b));
+        edges.add(nodeB, nodeA, maze.cost(a));
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The node on the cell, created if there is none yet.
+     */
+    private int nodeAt(int cell) {
+        if (nodeOf[cell] == -1) {
+            if (nodeCount == nodeCells.length) {
+                nodeCells = Arrays.copyOf(nodeCells, nodeCount * 2);
+            }
+            nodeCells[nodeCount] = cell;
+            nodeOf[cell] = nodeCount++;
+        }
+        return nodeOf[cell];
+    }
+
+    /**
+     * @param cell A cell index.
+     * @return The index of the cluster containing the cell.
+     */
+    private int clusterOf(int cell) {
+        return (maze.row(cell) / clusterSize) * clustersWide + maze.col(cell) / clusterSize;
+    }
+
+    /**
+     * @param cell A cell in the cluster of the most recent cluster search.
+     * @return The index of the cell in localDist and localParents.
+     */
+    private int local(int cell) {
+        return (maze.row(cell) - originRow) * clusterSize + maze.col(cell) - originCol;
+    }
+
+    /**
+     * Dijkstra search that never leaves the cluster of the source cell. Leaves
+     * the cost of each cell of the cluster in localDist, UNREACHABLE where there
+     * is no path, and for forward searches the direction of the move that entered
+     * each cell in localParents.
+     *
+     * @param source   The cell to search from.
+     * @param backward True to compute the cost from every cell to source instead.
+     */
+    private void searchCluster(int source, boolean backward) {
+        originCol = maze.col(source) / clusterSize * clusterSize;
+        originRow = maze.row(source) / clusterSize * clusterSize;
+        int origin = maze.cell(originCol, originRow), width = maze.width();
+        int spanCols = Math.min(clusterSize, cols - originCol), spanRows = Math.min(clusterSize, rows - originRow);
+        Arrays.fill(localDist, UNREACHABLE);
+        open.clear();
+        localDist[local(source)] = 0;
+        open.push(local(source), 0, 0);
+
+        // The queue holds local indexes, so bounds checks need no division by
+        // the maze width
+        while (!open.isEmpty()) {
+            int index = open.pop(), g = localDist[index];
+            if (open.poppedF() != g) {
+                continue;
+            }
+            int localCol = index % clusterSize, localRow = index / clusterSize;
+            int cell = origin + localRow * width + localCol;
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (maze.isWall(next)
+                        || (direction == CompiledMaze.UP && localRow == 0)
+                        || (direction == CompiledMaze.DOWN && localRow == spanRows - 1)
+                        || (direction == CompiledMaze.LEFT && localCol == 0)
+                        || (direction == CompiledMaze.RIGHT && localCol == spanCols - 1)) {
+                    continue;
+                }
+                int nextIndex = index + (direction == CompiledMaze.UP ? -clusterSize
+                        : direction == CompiledMaze.DOWN ? clusterSize : direction == CompiledMaze.LEFT ? -1 : 1);
+                int nextCost = g + maze.cost(backward ? cell : next);
+                if (nextCost < localDist[nextIndex]) {
+                    localDist[nextIndex] = nextCost;
+                    localParents[nextIndex] = (byte) direction;
+                    open.push(nextIndex, nextCost, nextCost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra search over the abstract graph plus a query's overlay edges.
+     *
+     * @param source  The node to search from.
+     * @param overlay The query's extra edges, over the same node numbering.
+     * @param dist    Array to receive the cost to every node.
+     * @param heap    A LongMinHeap to use as the frontier; cleared before use.
+     * @return The previous node on a cheapest route to every node, -1 for the
+     *         source and unreached nodes.
+     */
+    private int[] searchAbstract(int source, Graph overlay, int[] dist, LongMinHeap heap) {
+        int[] parents = new int[dist.length];
+        Arrays.fill(parents, -1);
+        Arrays.fill(dist, UNREACHABLE);
+        heap.clear();
+        dist[source] = 0;
+        heap.push(source);
+        Graph[] layers = { overlay, graph };
+
+        while (!heap.isEmpty()) {
+            long entry = heap.pop();
+            int node = (int) entry, g = (int) (entry >>> 32);
+            if (g != dist[node]) {
+                continue;
+            }
+            for (Graph edges : layers) {
+                if (edges == graph && node >= nodeCount) {
+                    // Points only have overlay edges
+                    continue;
+                }
+                for (int edge = edges.starts[node]; edge < edges.starts[node + 1]; edge++) {
+                    int next = edges.targets[edge], nextCost = g + edges.costs[edge];
+                    if (nextCost < dist[next]) {
+                        dist[next] = nextCost;
+                        parents[next] = node;
+                        heap.push(((long) nextCost << 32) | next);
+                    }
+                }
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Appends the moves of one leg, refining every abstract edge on it: an edge
+     * between clusters is a single move, and an edge within a cluster is replaced
+     * by a path from a search confined to that cluster.
+     *
+     * @param points  The cells of the query's points.
+     * @param parents Parent nodes from the abstract search of the leg's start.
+     * @param target  The node the leg ends on.
+     * @param result  The list of actions to append to.
+     */
+    private void appendLeg(int[] points, int[] parents, int target, List<String> result) {
+        LinkedList<String> leg = new LinkedList<>();
+        for (int node = target; parents[node] != -1; node = parents[node]) {
+            int to = cellOfNode(node, points), from = cellOfNode(parents[node], points);
+            if (clusterOf(from) != clusterOf(to)) {
+                leg.addFirst(CompiledMaze.ACTIONS[maze.direction(from, to)]);
+                continue;
+            }
+            searchCluster(from, false);
+            for (int cell = to; cell != from;) {
+                int direction = localParents[local(cell)];
+                leg.addFirst(CompiledMaze.ACTIONS[direction]);
+                cell = maze.neighbor(cell, CompiledMaze.opposite(direction));
+            }
+        }
+        result.addAll(leg);
+    }
+
+    /**
+     * @param node   A node of the abstract graph or of a query's points.
+     * @param points The cells of the query's points.
+     * @return The cell the node sits on.
+     */
+    private int cellOfNode(int node, int[] points) {
+        return node < nodeCount ? nodeCells[node] : points[node - nodeCount];
+    }
+
+    /**
+     * Growable list of directed, weighted edges.
+     */
+    private static class EdgeList {
+
+        int[] from = new int[64], to = new int[64], costs = new int[64];
+        int size;
+
+        void add(int source, int target, int cost) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                costs = Arrays.copyOf(costs, size * 2);
+            }
+            from[size] = source;
+            to[size] = target;
+            costs[size++] = cost;
+        }
+
+    }
+
+    /**
+     * Compressed adjacency lists: the edges out of node n are at indexes
+     * [starts[n], starts[n + 1]) of targets and costs.
+     */
+    private static class Graph {
+
+        final int[] starts, targets, costs;
+
+        Graph(int nodes, EdgeList edges) {
+            starts = new int[nodes + 1];
+            targets = new int[edges.size];
+            costs = new int[edges.size];
+            for (int edge = 0; edge < edges.size; edge++) {
+                starts[edges.from[edge] + 1]++;
+            }
+            for (int node = 0; node < nodes; node++) {
+                starts[node + 1] += starts[node];
+            }
+            int[] next = Arrays.copyOf(starts, nodes);
+            for (int edge = 0; edge < edges.size; edge++) {
+                int index = next[edges.from[edge]]++;
+                targets[index] = edges.to[edge];
+                costs[index] = edges.costs[edge];
+            }
+        }
+
+    }
+
+}
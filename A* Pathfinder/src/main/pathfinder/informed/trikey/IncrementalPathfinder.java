@@ -0,0 +1,384 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Incremental replanner (D* Lite) for mazes whose tiles change while an agent
+ * is moving through them. The search runs backward from the goal states, i.e.,
+ * the moment the last key is collected, toward the agent's current state, and
+ * its cost-to-goal values are kept between calls. After tiles change, or the
+ * agent moves, only states whose costs are actually affected are re-expanded,
+ * so replanning after a small edit is far cheaper than a fresh solve.<br>
+ * The planner keeps its own copy of the maze; the MazeProblem it was built
+ * from is not modified by {@link #updateTile(int, int, char)}.
+ */
+public class IncrementalPathfinder {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private final CompiledMaze maze;
+    private final int allKeys, keyMasks;
+    // Cost-to-goal estimate (g) and one-step lookahead (rhs) of each packed state
+    private final int[] cost, lookahead;
+    private final IndexedHeap open;
+    private final int[] successors = new int[4];
+    private int current, lastCurrent, keyModifier, expanded;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a planner for the given MazeProblem, with the agent on the initial
+     * state. No search happens until the first call to {@link #plan()}.
+     *
+     * @param problem The MazeProblem to plan in.
+     */
+    public IncrementalPathfinder(MazeProblem problem) {
+        this.maze = new CompiledMaze(problem);
+        this.allKeys = maze.allKeys();
+        this.keyMasks = allKeys + 1;
+        int states = maze.stateCount();
+        this.cost = new int[states];
+        this.lookahead = new int[states];
+        this.open = new IndexedHeap(states);
+        Arrays.fill(cost, INFINITY);
+        Arrays.fill(lookahead, INFINITY);
+        this.current = this.lastCurrent = maze.start() == -1 ? -1 : maze.state(maze.start(), 0);
+
+        // Collecting the last key on a key tile is the only way to reach a
+        // state with every key, so those are the goal states to search from
+        if (maze.isComplete()) {
+            for (int key = 0; key < maze.keyCount(); key++) {
+                int goal = maze.state(maze.keyCell(key), allKeys);
+                lookahead[goal] = 0;
+                open.update(goal, priority(goal));
+            }
+        }
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Returns an optimal action sequence from the agent's current state that
+     * collects every remaining key, repairing the previous search as needed.
+     *
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         the remaining keys cannot be collected.
+     */
+    public List<String> plan() {
+        expanded = 0;
+        if (current == -1 || !maze.isComplete()) {
+            return null;
+        }
+        if (isGoal(current)) {
+            return new ArrayList<>();
+        }
+        // Keys queued before the agent's latest moves were computed for where it
+        // stood then; shift by how far it has moved since, as updateTile does
+        keyModifier += distance(lastCurrent, current);
+        lastCurrent = current;
+        computeShortestPath();
+        if (cost[current] >= INFINITY) {
+            return null;
+        }
+
+        // Descend the cost-to-goal values, which strictly decrease along the way
+        List<String> result = new ArrayList<>();
+        for (int state = current; !isGoal(state);) {
+            int best = -1, bestCost = INFINITY;
+            for (int i = 0, count = maze.successors(state, successors); i < count; i++) {
+                int next = successors[i], nextCost = maze.cost(maze.cellOf(next)) + cost[next];
+                if (nextCost < bestCost) {
+                    best = next;
+                    bestCost = nextCost;
+                }
+            }
+            result.add(CompiledMaze.ACTIONS[maze.direction(maze.cellOf(state), maze.cellOf(best))]);
+            state = best;
+        }
+        return result;
+    }
+
+    /**
+     * Moves the agent one step, collecting the key on the tile entered, if any.
+     * The next {@link #plan()} starts from the new position.
+     *
+     * @param action One of "U", "D", "L", "R".
+     * @throws IllegalArgumentException If the action is unknown or walks into a wall.
+     */
+    public void move(String action) {
+        int direction = Arrays.asList(CompiledMaze.ACTIONS).indexOf(action);
+        if (direction == -1 || current == -1) {
+            throw new IllegalArgumentException("Unknown action or no agent: " + action);
+        }
+        int next = maze.neighbor(maze.cellOf(current), direction);
+        if (maze.isWall(next)) {
+            throw new IllegalArgumentException("Cannot move into a wall");
+        }
+        current = maze.state(next, maze.keysOf(current) | maze.keyBit(next));
+    }
+
+    /**
+     * Changes the tile at the given position and marks the states whose costs
+     * may change as inconsistent; the repair happens on the next {@link #plan()}.
+     *
+     * @param col  Column of the tile to change.
+     * @param row  Row of the tile to change.
+     * @param tile The new tile: 'X' (wall), '.' (open), or 'M' (mud).
+     * @throws IllegalArgumentException If the tile is not one of those, or the
+     *                                  position is out of bounds or holds a key
+     *                                  or the initial state.
+     */
+    public void updateTile(int col, int row, char tile) {
+        if (col < 0 || row < 0 || col >= maze.width() - 2 || row >= maze.height() - 2) {
+            throw new IllegalArgumentException("No tile at (" + col + ", " + row + ")");
+        }
+        byte code = tile == 'X' ? CompiledMaze.WALL
+                : tile == 'M' ? CompiledMaze.MUD : tile == '.' ? CompiledMaze.OPEN : -1;
+        if (code == -1) {
+            throw new IllegalArgumentException("Tiles can only change to 'X', '.', or 'M'");
+        }
+        int cell = maze.cell(col, row);
+        maze.setTile(cell, code);
+
+        // Keys in the queue were computed for the old agent position; shift all
+        // future keys by how far it has moved since, rather than re-keying
+        keyModifier += distance(lastCurrent, current);
+        lastCurrent = current;
+
+        // Edges into the cell changed cost (or vanished), and so did the edges out
+        // of it if it became or stopped being a wall
+        for (int keys = 0; keys < keyMasks; keys++) {
+            updateState(maze.state(cell, keys));
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbor = maze.neighbor(cell, direction);
+                if (!maze.isWall(neighbor)) {
+                    updateState(maze.state(neighbor, keys));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of states expanded by the most recent {@link #plan()}.
+     */
+    public int expanded() {
+        return expanded;
+    }
+
+    /**
+     * Expands inconsistent states in priority order until the agent's state is
+     * consistent and no queued state could still lower its cost.
+     */
+    private void computeShortestPath() {
+        while (!open.isEmpty()
+                && (open.peekPriority() < priority(current) || lookahead[current] != cost[current])) {
+            int state = open.peek();
+            long oldPriority = open.peekPriority(), newPriority = priority(state);
+            expanded++;
+            if (oldPriority < newPriority) {
+                open.update(state, newPriority);
+            } else if (cost[state] > lookahead[state]) {
+                // Overconsistent: settle the lower cost and pass it backward
+                cost[state] = lookahead[state];
+                open.remove(state);
+                forEachPredecessor(state);
+            } else {
+                // Underconsistent: invalidate and let the state and its
+                // predecessors find new best successors
+                cost[state] = INFINITY;
+                updateState(state);
+                forEachPredecessor(state);
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #updateState(int)} on every state with a move into the given
+     * state: states on any open neighbor that, after entering this state's tile,
+     * hold exactly this state's keys.
+     *
+     * @param state A packed state.
+     */
+    private void forEachPredecessor(int state) {
+        int cell = maze.cellOf(state), keys = maze.keysOf(state), bit = maze.keyBit(cell);
+        if (bit != 0 && (keys & bit) == 0) {
+            return;
+        }
+        for (int direction = 0; direction < 4; direction++) {
+            int neighbor = maze.neighbor(cell, direction);
+            if (maze.isWall(neighbor)) {
+                continue;
+            }
+            updateState(maze.state(neighbor, keys));
+            if (bit != 0) {
+                updateState(maze.state(neighbor, keys & ~bit));
+            }
+        }
+    }
+
+    /**
+     * Recomputes the one-step lookahead of the given state and queues it if it is
+     * inconsistent with its cost-to-goal. Goal states and states that cannot
+     * exist (standing on a key without having collected it) are left alone.
+     *
+     * @param state A packed state.
+     */
+    private void updateState(int state) {
+        int cell = maze.cellOf(state), bit = maze.keyBit(cell);
+        if (isGoal(state) || (maze.keysOf(state) & bit) != bit) {
+            return;
+        }
+        int best = INFINITY;
+        if (!maze.isWall(cell)) {
+            for (int i = 0, count = maze.successors(state, successors); i < count; i++) {
+                int next = successors[i];
+                best = Math.min(best, maze.cost(maze.cellOf(next)) + cost[next]);
+            }
+        }
+        lookahead[state] = Math.min(best, INFINITY);
+        if (cost[state] != lookahead[state]) {
+            open.update(state, priority(state));
+        } else {
+            open.remove(state);
+        }
+    }
+
+    /**
+     * D* Lite priority of a state, packed as (k1, k2) into one long so that the
+     * lexicographic order of the pair is the numeric order of the long.
+     *
+     * @param state A packed state.
+     * @return The packed priority.
+     */
+    private long priority(int state) {
+        int settled = Math.min(cost[state], lookahead[state]);
+        int first = settled >= INFINITY ? INFINITY : settled + distance(current, state) + keyModifier;
+        return ((long) first << 32) | settled;
+    }
+
+    /**
+     * @param state A packed state.
+     * @return True if every key has been collected in the given state.
+     */
+    private boolean isGoal(int state) {
+        return maze.keysOf(state) == allKeys;
+    }
+
+    /**
+     * Manhattan distance between the cells of two states; a consistent lower
+     * bound on the cost between them.
+     *
+     * @param from A packed state.
+     * @param to   A packed state.
+     * @return The distance between their cells.
+     */
+    private int distance(int from, int to) {
+        int fromCell = maze.cellOf(from), toCell = maze.cellOf(to);
+        return Math.abs(maze.col(fromCell) - maze.col(toCell)) + Math.abs(maze.row(fromCell) - maze.row(toCell));
+    }
+
+    /**
+     * Binary min-heap of states supporting priority updates and removal of any
+     * state, as D* Lite requires, through a dense per-state position array.
+     */
+    private static class IndexedHeap {
+
+        private final int[] states, positions;
+        private final long[] priorities;
+        private int size;
+
+        IndexedHeap(int capacity) {
+            states = new int[capacity];
+            priorities = new long[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int peek() {
+            return states[0];
+        }
+
+        long peekPriority() {
+            return priorities[0];
+        }
+
+        /**
+         * Inserts the state, or changes its priority if it is already queued.
+         */
+        void update(int state, long priority) {
+            int index = positions[state];
+            if (index == -1) {
+                index = size++;
+            } else if (priority > priorities[index]) {
+                siftDown(index, state, priority);
+                return;
+            }
+            siftUp(index, state, priority);
+        }
+
+        /**
+         * Removes the state if it is queued.
+         */
+        void remove(int state) {
+            int index = positions[state];
+            if (index == -1) {
+                return;
+            }
+            positions[state] = -1;
+            if (index == --size) {
+                return;
+            }
+            int last = states[size];
+            long lastPriority = priorities[size];
+            if (lastPriority < priorities[index]) {
+                siftUp(index, last, lastPriority);
+            } else {
+                siftDown(index, last, lastPriority);
+            }
+        }
+
+        private void siftUp(int index, int state, long priority) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (priorities[parent] <= priority) {
+                    break;
+                }
+                place(index, states[parent], priorities[parent]);
+                index = parent;
+            }
+            place(index, state, priority);
+        }
+
+        private void siftDown(int index, int state, long priority) {
+            while (2 * index + 1 < size) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                    child++;
+                }
+                if (priority <= priorities[child]) {
+                    break;
+                }
+                place(index, states[child], priorities[child]);
+                index = child;
+            }
+            place(index, state, priority);
+        }
+
+        private void place(int index, int state, long priority) {
+            states[index] = state;
+            priorities[index] = priority;
+            positions[state] = index;
+        }
+
+    }
+
+}
@@ -0,0 +1,209 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Jump Point Search for the 4-connected maze grid, layered on A* over packed
+ * (cell, keys collected) states. Among the many equal-cost paths through an
+ * open region, only the canonical ones that move horizontally first and turn
+ * from vertical to horizontal only when a wall forces it are followed. Each
+ * successor is found by "jumping" in a straight line until such a turn, or
+ * a turn that the horizontal-first ordering still has to explore, becomes
+ * possible, so the cells in between are never pushed or expanded.<br>
+ * The symmetry only holds where every move costs 1, so mud tiles, tiles next
+ * to mud, and key tiles are forced stopping points: a jump always ends on one
+ * and it is expanded in all four directions, like the initial state. This
+ * keeps solutions optimal under {@link CompiledMaze#cost(int)}.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+class JumpPointSearch {
+
+    // Arrival direction of a state that must be expanded in every direction
+    private static final byte ALL_DIRECTIONS = -1;
+
+    private CompiledMaze maze;
+    private boolean[] stops;
+    private int[] cost, parent;
+    private byte[] arrival;
+    private int expanded;
+
+    /**
+     * Finds an optimal action sequence that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         there is no solution.
+     */
+    List<String> solve(CompiledMaze maze) {
+        expanded = 0;
+        if (!maze.isComplete()) {
+            return null;
+        }
+        this.maze = maze;
+        this.stops = findStops(maze);
+        int states = maze.stateCount(), allKeys = maze.allKeys();
+        cost = new int[states];
+        parent = new int[states];
+        arrival = new byte[states];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+
+        BucketQueue open = new BucketQueue();
+        int initial = maze.state(maze.start(), 0);
+        cost[initial] = 0;
+        parent[initial] = -1;
+        arrival[initial] = ALL_DIRECTIONS;
+        open.push(initial, maze.manhattan(initial), 0);
+
+        while (!open.isEmpty()) {
+            int state = open.pop(), g = cost[state];
+            if (open.poppedF() != g + maze.manhattan(state)) {
+                continue;
+            }
+            if ((state & allKeys) == allKeys) {
+                return actions(state);
+            }
+            expanded++;
+
+            int cell = maze.cellOf(state), keys = maze.keysOf(state);
+            for (int direction = 0; direction < 4; direction++) {
+                if (!isSuccessorDirection(cell, arrival[state], direction)) {
+                    continue;
+                }
+                int jumpPoint = jump(cell, direction);
+                if (jumpPoint == -1) {
+                    continue;
+                }
+                int distance = Math.abs(maze.col(jumpPoint) - maze.col(cell))
+                        + Math.abs(maze.row(jumpPoint) - maze.row(cell));
+                int next = maze.state(jumpPoint, keys | maze.keyBit(jumpPoint)),
+                    nextCost = g + distance - 1 + maze.cost(jumpPoint);
+                if (nextCost < cost[next]) {
+                    cost[next] = nextCost;
+                    parent[next] = state;
+                    arrival[next] = stops[jumpPoint] ? ALL_DIRECTIONS : (byte) direction;
+                    open.push(next, nextCost + maze.manhattan(next), nextCost);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of jump points expanded by the most recent search.
+     */
+    int expanded() {
+        return expanded;
+    }
+
+    /**
+     * Marks the cells where the grid stops being uniform-cost: mud, the cells
+     * next to mud, and keys.
+     *
+     * @param maze The CompiledMaze being searched.
+     * @return Whether each cell is a forced stopping point.
+     */
+    private static boolean[] findStops(CompiledMaze maze) {
+        boolean[] stops = new boolean[maze.cellCount()];
+        for (int cell = 0; cell < stops.length; cell++) {
+            if (maze.isWall(cell)) {
+                continue;
+            }
+            if (maze.keyBit(cell) != 0 || maze.cost(cell) > 1) {
+                stops[cell] = true;
+                continue;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (!maze.isWall(next) && maze.cost(next) > 1) {
+                    stops[cell] = true;
+                }
+            }
+        }
+        return stops;
+    }
+
+    /**
+     * Canonical pruning rule: after a horizontal move, continuing or turning
+     * vertically are all natural; after a vertical move, only continuing is,
+     * unless the side cell could not have been reached horizontally first
+     * because the cell behind it is blocked (a forced neighbor).
+     *
+     * @param cell      The cell being expanded.
+     * @param arrival   The direction the cell was reached in, or ALL_DIRECTIONS.
+     * @param direction The candidate direction to jump in.
+     * @return True if a jump in that direction may lie on a canonical path.
+     */
+    private boolean isSuccessorDirection(int cell, int arrival, int direction) {
+        if (arrival == ALL_DIRECTIONS || direction == arrival) {
+            return true;
+        }
+        if (direction == CompiledMaze.opposite(arrival)) {
+            return false;
+        }
+        if (arrival == CompiledMaze.LEFT || arrival == CompiledMaze.RIGHT) {
+            return true;
+        }
+        return isForced(cell, arrival, direction);
+    }
+
+    /**
+     * Mud counts as blocked here: a canonical detour through mud would cost more
+     * than the path it replaces, so it cannot stand in for one.
+     *
+     * @param cell     A cell reached by a vertical move.
+     * @param vertical The vertical direction of that move.
+     * @param side     LEFT or RIGHT.
+     * @return True if the side neighbor is open but the cell behind it is not.
+     */
+    private boolean isForced(int cell, int vertical, int side) {
+        int behind = maze.neighbor(maze.neighbor(cell, CompiledMaze.opposite(vertical)), side);
+        return !maze.isWall(maze.neighbor(cell, side)) && (maze.isWall(behind) || maze.cost(behind) > 1);
+    }
+
+    /**
+     * Moves from cell in a straight line until reaching a jump point.
+     *
+     * @param cell      The cell to jump from.
+     * @param direction The direction to jump in.
+     * @return The jump point reached, or -1 if the line runs into a wall first.
+     */
+    private int jump(int cell, int direction) {
+        boolean horizontal = direction == CompiledMaze.LEFT || direction == CompiledMaze.RIGHT;
+        for (int next = maze.neighbor(cell, direction); !maze.isWall(next); next = maze.neighbor(next, direction)) {
+            if (stops[next]) {
+                return next;
+            }
+            if (horizontal) {
+                // A horizontal cell is a jump point if turning there leads anywhere
+                if (jump(next, CompiledMaze.UP) != -1 || jump(next, CompiledMaze.DOWN) != -1) {
+                    return next;
+                }
+            } else if (isForced(next, direction, CompiledMaze.LEFT) || isForced(next, direction, CompiledMaze.RIGHT)) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follows the parent array back from the goal state, expanding every jump
+     * between consecutive jump points into its single moves.
+     *
+     * @param goal The goal state reached.
+     * @return The list of actions from the initial state to goal.
+     */
+    private List<String> actions(int goal) {
+        LinkedList<String> result = new LinkedList<>();
+        for (int state = goal; parent[state] != -1; state = parent[state]) {
+            int to = maze.cellOf(state), from = maze.cellOf(parent[state]);
+            int direction = maze.row(to) == maze.row(from)
+                    ? (to < from ? CompiledMaze.LEFT : CompiledMaze.RIGHT)
+                    : (to < from ? CompiledMaze.UP : CompiledMaze.DOWN);
+            for (int cell = from; cell != to; cell = maze.neighbor(cell, direction)) {
+                result.addFirst(CompiledMaze.ACTIONS[direction]);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+}
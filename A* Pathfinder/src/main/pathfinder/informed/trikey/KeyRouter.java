@@ -0,0 +1,169 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Key-collection solver for mazes with many keys. Instead of searching the
+ * product of cells and key masks, it computes the cheapest cost between every
+ * pair of the initial state and keys with bit-parallel wavefronts over cells
+ * ({@link BitboardDistances}), and then picks the cheapest order to visit the
+ * keys with the Held-Karp bitmask dynamic program. Each leg of the route is
+ * walked back through the distance field of one more wavefront from its start,
+ * stopped as soon as it reaches the leg's end.<br>
+ * Any optimal route visits the keys in some first-visit order and costs at
+ * least the sum of the pairwise shortest costs along that order, so the
+ * cheapest order gives an optimal solution. Cost is O(k) single-source
+ * searches plus O(2^k * k^2) for the ordering, which is practical up to about
+ * 20 keys.
+ */
+public class KeyRouter {
+
+    // Cost of an unreachable pair; small enough that sums of two never overflow
+    static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+    // Most keys for the Held-Karp table, which holds 2^k * k ints: about 80 MB
+    // at 20 keys, and 16 times that at 24
+    public static final int MAX_KEYS = 20;
+
+    /**
+     * Given a MazeProblem, returns an optimal sequence of actions that collects
+     * every key piece; see {@link Pathfinder#solve(MazeProblem)}.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     * @return A List of Strings representing actions that solve the problem of the
+     *         format: ["R", "R", "L", ...], or null if there is no solution
+     */
+    public static List<String> solve(MazeProblem problem) {
+        return solve(new CompiledMaze(problem));
+    }
+
+    /**
+     * Solves an already compiled maze; see {@link #solve(MazeProblem)}.
+     *
+     * @param maze A CompiledMaze of the problem to solve.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     * @throws IllegalArgumentException If the maze has more than MAX_KEYS keys.
+     */
+    public static List<String> solve(CompiledMaze maze) {
+        if (maze.keyCount() > MAX_KEYS) {
+            throw new IllegalArgumentException("KeyRouter supports at most " + MAX_KEYS + " keys");
+        }
+        if (!maze.isComplete()) {
+            return null;
+        }
+
+        // Point 0 is the initial state, point k + 1 is key k
+        int keys = maze.keyCount(), points = keys + 1;
+        int[] pointCells = new int[points];
+        pointCells[0] = maze.start();
+        for (int key = 0; key < keys; key++) {
+            pointCells[key + 1] = maze.keyCell(key);
+        }
+
+        BitboardDistances wavefront = new BitboardDistances(maze);
+        int[][] costs = wavefront.keyDistances();
+        int[] order = bestOrder(costs, keys);
+        if (order == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        int[] field = new int[maze.cellCount()];
+        for (int leg = 0, from = 0; leg < keys; from = order[leg++] + 1) {
+            wavefront.distances(pointCells[from], pointCells[order[leg] + 1], field);
+            appendLeg(maze, field, pointCells[order[leg] + 1], result);
+        }
+        return result;
+    }
+
+    /**
+     * Held-Karp dynamic program over subsets of keys: best[mask][last] is the
+     * cheapest cost of leaving the initial state, visiting exactly the keys in
+     * mask, and ending on key last.
+     *
+     * @param costs Cost matrix between points, where point 0 is the initial
+     *              state and point k + 1 is key k.
+     * @param keys  The number of keys.
+     * @return The keys in the cheapest visiting order, or null if some key
+     *         cannot be reached.
+     */
+    static int[] bestOrder(int[][] costs, int keys) {
+        // Flattened as best[mask * keys + last] to keep the table in one array
+        int full = (1 << keys) - 1;
+        int[] best = new int[(full + 1) * keys];
+        Arrays.fill(best, UNREACHABLE);
+        for (int key = 0; key < keys; key++) {
+            best[(1 << key) * keys + key] = costs[0][key + 1];
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            for (int last = 0; last < keys; last++) {
+                int cost = best[mask * keys + last];
+                if (cost >= UNREACHABLE) {
+                    continue;
+                }
+                int[] fromLast = costs[last + 1];
+                for (int rest = full & ~mask; rest != 0; rest &= rest - 1) {
+                    int next = Integer.numberOfTrailingZeros(rest);
+                    int index = (mask | (1 << next)) * keys + next, nextCost = cost + fromLast[next + 1];
+                    if (nextCost < best[index]) {
+                        best[index] = nextCost;
+                    }
+                }
+            }
+        }
+
+        // Walk back from the cheapest full tour, each time finding the key
+        // whose table entry accounts for the cost of the one after it
+        int[] order = new int[keys];
+        int mask = full, last = 0;
+        for (int key = 1; key < keys; key++) {
+            if (best[full * keys + key] < best[full * keys + last]) {
+                last = key;
+            }
+        }
+        if (keys > 0 && best[full * keys + last] >= UNREACHABLE) {
+            return null;
+        }
+        for (int position = keys - 1; position >= 0; position--) {
+            order[position] = last;
+            int prevMask = mask & ~(1 << last);
+            for (int prev = 0; prev < keys && prevMask != 0; prev++) {
+                if ((prevMask & (1 << prev)) != 0
+                        && best[prevMask * keys + prev] + costs[prev + 1][last + 1] == best[mask * keys + last]) {
+                    last = prev;
+                    break;
+                }
+            }
+            mask = prevMask;
+        }
+        return order;
+    }
+
+    /**
+     * Appends the actions of a shortest path to the given cell, walking back
+     * through the distance field of the leg's start point: a cell's predecessor
+     * is any neighbor whose cost plus the cost of entering the cell equals the
+     * cell's own cost.
+     *
+     * @param maze   The CompiledMaze being solved.
+     * @param field  Costs from the leg's start point, complete for every cell
+     *               cheaper to reach than target.
+     * @param target The cell the leg ends on.
+     * @param result The list of actions to append to.
+     */
+    private static void appendLeg(CompiledMaze maze, int[] field, int target, List<String> result) {
+        String[] leg = new String[field[target]];
+        int length = 0;
+        for (int cell = target; field[cell] != 0;) {
+            int previous = field[cell] - maze.cost(cell), direction = 0;
+            while (maze.isWall(maze.neighbor(cell, direction)) || field[maze.neighbor(cell, direction)] != previous) {
+                direction++;
+            }
+            leg[length++] = CompiledMaze.ACTIONS[CompiledMaze.opposite(direction)];
+            cell = maze.neighbor(cell, direction);
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            result.add(leg[i]);
+        }
+    }
+
+}
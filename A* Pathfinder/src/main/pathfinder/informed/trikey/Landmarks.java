@@ -0,0 +1,335 @@
+package main.pathfinder.informed.trikey;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Precomputed ALT (A*, Landmarks, Triangle inequality) heuristic for one maze.
+ * A few landmark cells are picked far apart, and for each of them the exact
+ * costs from the landmark to every cell and from every cell to the landmark
+ * are stored, mud included. Moves cost whatever the entered cell costs, so
+ * those two directions differ and both are needed.<br>
+ * For any landmark L, the triangle inequality bounds the cost of reaching t
+ * from v by d(L, t) - d(L, v) and by d(v, L) - d(t, L); the largest of these
+ * over all landmarks is an admissible and consistent estimate that, unlike
+ * Manhattan distance, accounts for the detours that long walls force.<br>
+ * Distance tables are stored as short[] when their costs fit in 16 bits and
+ * as int[] otherwise. Landmarks are Serializable, and {@link #save(Path)} and
+ * {@link #load(Path)} write and read them, so they can be built once per maze
+ * and loaded at startup. They stay valid only as long as the maze's tiles do
+ * not change.
+ */
+public class Landmarks implements Serializable {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final long serialVersionUID = 1L;
+    private static final int UNREACHABLE = KeyRouter.UNREACHABLE;
+    // Unreachable cells in a short[] table; stored costs are read unsigned
+    private static final int NARROW_UNREACHABLE = 0xFFFF;
+
+    private final int width, height;
+    private final int[] landmarkCells;
+    // Table 2 * i holds d(landmark i, cell) and table 2 * i + 1 holds
+    // d(cell, landmark i); each table is in exactly one of the two arrays
+    private final short[][] narrow;
+    private final int[][] wide;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Picks landmarks in the given MazeProblem and computes their distances.
+     *
+     * @param problem The MazeProblem to build the heuristic for.
+     * @param count   The number of landmarks.
+     * @throws IllegalArgumentException If count is less than 1.
+     */
+    public Landmarks(MazeProblem problem, int count) {
+        this(new CompiledMaze(problem), count);
+    }
+
+    /**
+     * Picks landmarks in the given maze and computes their distances. The first
+     * landmark is the reachable cell farthest from the initial state, or from
+     * the first open cell if the maze has no initial state, and each
+     * next one the cell whose cost from every landmark so far is largest, which
+     * spreads them around the edges of the maze where their bounds are tightest.
+     * Fewer landmarks are used if fewer cells are reachable.
+     *
+     * @param maze  The CompiledMaze to build the heuristic for.
+     * @param count The number of landmarks.
+     * @throws IllegalArgumentException If count is less than 1.
+     */
+    public Landmarks(CompiledMaze maze, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one landmark is required");
+        }
+        this.width = maze.width();
+        this.height = maze.height();
+        int cells = maze.cellCount();
+        BucketQueue open = new BucketQueue();
+        int[] fromStart = new int[cells], spread = new int[cells], dist = new int[cells];
+        // Landmarks describe the grid rather than one query, so a grid without
+        // an initial state is still covered from wherever it is open
+        int seed = maze.start();
+        for (int cell = 0; seed == -1 && cell < cells; cell++) {
+            if (!maze.isWall(cell)) {
+                seed = cell;
+            }
+        }
+        if (seed == -1) {
+            Arrays.fill(fromStart, UNREACHABLE);
+        } else {
+            dijkstra(maze, seed, false, fromStart, open);
+        }
+        System.arraycopy(fromStart, 0, spread, 0, cells);
+
+        List<Object> tables = new ArrayList<>();
+        int[] chosen = new int[count];
+        int chosenCount = 0;
+        while (chosenCount < count) {
+            int landmark = farthest(fromStart, spread);
+            if (landmark == -1) {
+                break;
+            }
+            chosen[chosenCount++] = landmark;
+            dijkstra(maze, landmark, false, dist, open);
+            for (int cell = 0; cell < cells; cell++) {
+                spread[cell] = Math.min(spread[cell], dist[cell]);
+            }
+            tables.add(compact(dist));
+            dijkstra(maze, landmark, true, dist, open);
+            tables.add(compact(dist));
+        }
+
+        this.landmarkCells = Arrays.copyOf(chosen, chosenCount);
+        this.narrow = new short[tables.size()][];
+        this.wide = new int[tables.size()][];
+        for (int table = 0; table < tables.size(); table++) {
+            if (tables.get(table) instanceof short[]) {
+                narrow[table] = (short[]) tables.get(table);
+            } else {
+                wide[table] = (int[]) tables.get(table);
+            }
+        }
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Reads landmarks written by {@link #save(Path)}.
+     *
+     * @param path The file to read.
+     * @return The landmarks.
+     * @throws IOException If the file cannot be read or holds no landmarks.
+     */
+    public static Landmarks load(Path path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Object result = in.readObject();
+            if (!(result instanceof Landmarks)) {
+                throw new IOException("Not a landmark file: " + path);
+            }
+            return (Landmarks) result;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a landmark file: " + path, e);
+        }
+    }
+
+    /**
+     * Writes these landmarks with Java serialization.
+     *
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * @return The number of landmarks.
+     */
+    public int count() {
+        return landmarkCells.length;
+    }
+
+    /**
+     * @param landmark A landmark index in [0, count).
+     * @return The cell of that landmark.
+     */
+    public int landmarkCell(int landmark) {
+        return landmarkCells[landmark];
+    }
+
+    /**
+     * @param maze A CompiledMaze.
+     * @return True if these landmarks were built for a maze of the same size.
+     *         Only the size can be checked; the tiles must also be the same
+     *         for the estimates to be admissible.
+     */
+    public boolean fits(CompiledMaze maze) {
+        return maze.width() == width && maze.height() == height;
+    }
+
+    /**
+     * Lower bound on the cost of moving from one cell to another.
+     *
+     * @param from A cell index.
+     * @param to   A cell index.
+     * @return The largest triangle-inequality bound over all landmarks, or
+     *         UNREACHABLE if some landmark proves there is no path.
+     */
+    public int lowerBound(int from, int to) {
+        int result = 0;
+        for (int table = 0; table < narrow.length; table += 2) {
+            // d(L, to) <= d(L, from) + d(from, to)
+            int landmarkToFrom = distance(table, from), landmarkToTo = distance(table, to);
+            if (landmarkToFrom != UNREACHABLE) {
+                if (landmarkToTo == UNREACHABLE) {
+                    return UNREACHABLE;
+                }
+                result = Math.max(result, landmarkToTo - landmarkToFrom);
+            }
+            // d(from, L) <= d(from, to) + d(to, L)
+            int fromToLandmark = distance(table + 1, from), toToLandmark = distance(table + 1, to);
+            if (toToLandmark != UNREACHABLE) {
+                if (fromToLandmark == UNREACHABLE) {
+                    return UNREACHABLE;
+                }
+                result = Math.max(result, fromToLandmark - toToLandmark);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Admissible and consistent estimate of the cost of collecting the remaining
+     * keys: every uncollected key is at least its landmark bound away.
+     *
+     * @param maze  The CompiledMaze these landmarks were built for.
+     * @param state A packed state.
+     * @return The ALT heuristic of the state, or UNREACHABLE if some
+     *         uncollected key cannot be reached from it.
+     */
+    public int estimate(CompiledMaze maze, int state) {
+        int cell = maze.cellOf(state), missing = maze.allKeys() & ~maze.keysOf(state), result = 0;
+        // Read each landmark's costs at the cell once, then bound every key with them
+        for (int table = 0; table < narrow.length; table += 2) {
+            int landmarkToCell = distance(table, cell), cellToLandmark = distance(table + 1, cell);
+            for (int keys = missing; keys != 0; keys &= keys - 1) {
+                int keyCell = maze.keyCell(Integer.numberOfTrailingZeros(keys));
+                int landmarkToKey = distance(table, keyCell), keyToLandmark = distance(table + 1, keyCell);
+                if (landmarkToCell != UNREACHABLE) {
+                    if (landmarkToKey == UNREACHABLE) {
+                        return UNREACHABLE;
+                    }
+                    result = Math.max(result, landmarkToKey - landmarkToCell);
+                }
+                if (keyToLandmark != UNREACHABLE) {
+                    if (cellToLandmark == UNREACHABLE) {
+                        return UNREACHABLE;
+                    }
+                    result = Math.max(result, cellToLandmark - keyToLandmark);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param table A table index.
+     * @param cell  A cell index.
+     * @return The stored cost, or UNREACHABLE.
+     */
+    private int distance(int table, int cell) {
+        short[] costs = narrow[table];
+        if (costs == null) {
+            return wide[table][cell];
+        }
+        int cost = costs[cell] & 0xFFFF;
+        return cost == NARROW_UNREACHABLE ? UNREACHABLE : cost;
+    }
+
+    /**
+     * @param fromStart The cost of every cell from the initial state, or the
+     *                  cell the landmarks were seeded from.
+     * @param spread    The cost of every cell from the nearest landmark so far.
+     * @return The reachable cell with the largest spread, or -1 if every
+     *         reachable cell is already a landmark.
+     */
+    private static int farthest(int[] fromStart, int[] spread) {
+        int result = -1;
+        for (int cell = 0; cell < spread.length; cell++) {
+            if (fromStart[cell] != UNREACHABLE && spread[cell] > 0
+                    && (result == -1 || spread[cell] > spread[result])) {
+                result = cell;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param dist Costs of every cell, UNREACHABLE where there is no path.
+     * @return A short[] copy if every cost fits in 16 bits, else an int[] copy.
+     */
+    private static Object compact(int[] dist) {
+        int max = 0;
+        for (int cost : dist) {
+            if (cost != UNREACHABLE) {
+                max = Math.max(max, cost);
+            }
+        }
+        if (max >= NARROW_UNREACHABLE) {
+            return dist.clone();
+        }
+        short[] result = new short[dist.length];
+        for (int cell = 0; cell < dist.length; cell++) {
+            result[cell] = (short) (dist[cell] == UNREACHABLE ? NARROW_UNREACHABLE : dist[cell]);
+        }
+        return result;
+    }
+
+    /**
+     * Dijkstra search over cells, where moving into a cell costs
+     * {@link CompiledMaze#cost(int)}. A backward search follows moves in
+     * reverse, finding the cost from every cell to the source instead.
+     *
+     * @param maze     The CompiledMaze to search.
+     * @param source   The cell to search from, or to when backward.
+     * @param backward True for costs to the source rather than from it.
+     * @param dist     Array of length cellCount to receive the costs,
+     *                 UNREACHABLE where there is no path.
+     * @param open     A BucketQueue to use as the frontier; cleared before use.
+     */
+    private static void dijkstra(CompiledMaze maze, int source, boolean backward, int[] dist, BucketQueue open) {
+        Arrays.fill(dist, UNREACHABLE);
+        open.clear();
+        dist[source] = 0;
+        open.push(source, 0, 0);
+
+        while (!open.isEmpty()) {
+            int cell = open.pop(), g = dist[cell];
+            if (open.poppedF() != g) {
+                continue;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (maze.isWall(next)) {
+                    continue;
+                }
+                // Backward, the move runs from next into cell and costs cell's tile
+                int nextCost = g + maze.cost(backward ? cell : next);
+                if (nextCost < dist[next]) {
+                    dist[next] = nextCost;
+                    open.push(next, nextCost, nextCost);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.Arrays;
+
+/**
+ * Growable binary min-heap of primitive longs. Search engines pack a priority
+ * into the high bits and a state into the low bits of each entry, so pushes
+ * and pops never allocate once the backing array has grown to size.
+ */
+class LongMinHeap {
+
+    private long[] heap;
+    private int size;
+
+    /**
+     * Creates an empty heap with room for 64 entries before it grows.
+     */
+    LongMinHeap() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty heap with room for the given number of entries before it
+     * grows, for callers that know their largest size up front.
+     *
+     * @param capacity The initial size of the backing array; at least 1.
+     */
+    LongMinHeap(int capacity) {
+        heap = new long[capacity];
+    }
+
+    /**
+     * @return True if the heap holds no entries.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of entries in the heap.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, keeping the backing array for reuse.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds the given entry to the heap.
+     *
+     * @param value The entry to add.
+     */
+    void push(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Reads the entry at a position of the backing array, for scanning every
+     * entry in no particular order.
+     *
+     * @param index A position in [0, size).
+     * @return The entry at that position.
+     */
+    long get(int index) {
+        return heap[index];
+    }
+
+    /**
+     * @return The smallest entry, without removing it. The heap must not be empty.
+     */
+    long peek() {
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the smallest entry. The heap must not be empty.
+     *
+     * @return The smallest entry.
+     */
+    long pop() {
+        long result = heap[0], last = heap[--size];
+        int index = 0, half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = last;
+        return result;
+    }
+
+}
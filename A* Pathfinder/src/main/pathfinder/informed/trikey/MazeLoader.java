@@ -0,0 +1,296 @@
+package main.pathfinder.informed.trikey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.IntStream;
+
+/**
+ * Loads huge mazes from files straight into CompiledMazes, without ever
+ * building the String[] of a MazeProblem. Two formats are supported:<br>
+ * - Text: the same tiles as {@link MazeProblem#MazeProblem(String[])}, one
+ * row per line. The file is memory-mapped and its rows are validated and
+ * translated into an off-heap grid by one parallel scan that also finds the
+ * initial state and keys.<br>
+ * - Binary, as written by {@link #save(CompiledMaze, Path)}: a small header
+ * followed by the padded grid of tile codes exactly as CompiledMaze lays it
+ * out. The file is mapped and handed to the solver as the grid itself, so
+ * nothing is copied; loading is one parallel validation pass whose cost is
+ * mostly page faults.<br>
+ * Both formats are limited to files and grids under 2 GB, the most a single
+ * mapped buffer can address.
+ */
+public class MazeLoader {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // Binary header: magic, version, width, height, start, keyCount, keyCells
+    private static final int MAGIC = 0x4D415A45, VERSION = 1, FIXED_HEADER = 6 * Integer.BYTES;
+    // Rows per task of the parallel scans
+    private static final int ROWS_PER_CHUNK = 64;
+    private static final byte INVALID = -1, INITIAL = -2;
+    // Bit set of the tile codes that need no further checks; one test per tile
+    // keeps the validation scan fast enough to be bound by page faults
+    private static final int PLAIN_TILES = 1 << CompiledMaze.WALL | 1 << CompiledMaze.OPEN | 1 << CompiledMaze.MUD;
+
+    private MazeLoader() {
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Loads a text maze with the default key tiles '1', '2', '3'.
+     *
+     * @param path The file to load.
+     * @return The compiled maze, backed by off-heap memory.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a valid maze.
+     */
+    public static CompiledMaze loadText(Path path) throws IOException {
+        return loadText(path, new HashSet<>(Arrays.asList("1", "2", "3")));
+    }
+
+    /**
+     * Loads a text maze: rows of equal length, separated by "\n" or "\r\n", with
+     * the tiles of {@link MazeProblem#MazeProblem(String[], Set)}.
+     *
+     * @param path     The file to load.
+     * @param keyTiles The set of single-character key tiles.
+     * @return The compiled maze, backed by off-heap memory.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a valid maze: rows of
+     *                                  unequal length, unknown tiles, or more
+     *                                  than one initial state or copy of a key.
+     */
+    public static CompiledMaze loadText(Path path, Set<String> keyTiles) throws IOException {
+        byte[] codes = tileCodes(keyTiles);
+        MappedByteBuffer text = map(path);
+        int size = text.capacity();
+
+        // The first line break fixes the row length and the line separator
+        int lineEnd = 0;
+        while (lineEnd < size && text.get(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        int separator = lineEnd < size && lineEnd > 0 && text.get(lineEnd - 1) == '\r' ? 2 : 1;
+        int cols = lineEnd + 1 - separator, stride = cols + separator;
+        // Every row ends in a separator, except perhaps the last
+        boolean terminated = size % stride == 0;
+        int rows = terminated ? size / stride
+                : (size + separator) % stride == 0 ? (size + separator) / stride : -1;
+        if (rows == -1 || (long) (cols + 2) * (rows + 2) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maze rows must all have the same length");
+        }
+
+        // The zero-filled buffer is already the ring of walls around the maze
+        int width = cols + 2, height = rows + 2;
+        ByteBuffer tiles = ByteBuffer.allocateDirect(width * height);
+        AtomicInteger start = new AtomicInteger(-1);
+        AtomicIntegerArray keyCells = new AtomicIntegerArray(keyTiles.size());
+        for (int key = 0; key < keyTiles.size(); key++) {
+            keyCells.set(key, -1);
+        }
+
+        IntStream.range(0, (rows + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK).parallel().forEach(chunk -> {
+            int end = Math.min(rows, (chunk + 1) * ROWS_PER_CHUNK);
+            for (int row = chunk * ROWS_PER_CHUNK; row < end; row++) {
+                int offset = row * stride, cell = (row + 1) * width + 1;
+                for (int col = 0; col < cols; col++, cell++) {
+                    int character = text.get(offset + col) & 0xFF;
+                    byte code = character < codes.length ? codes[character] : INVALID;
+                    if (code == INVALID) {
+                        throw new IllegalArgumentException("Unknown tile at column " + col + ", row " + row);
+                    }
+                    if (code == INITIAL) {
+                        claimStart(start, cell);
+                        code = CompiledMaze.OPEN;
+                    } else if (code >= CompiledMaze.KEY) {
+                        claimKey(keyCells, code - CompiledMaze.KEY, cell);
+                    }
+                    tiles.put(cell, code);
+                }
+                if ((row < rows - 1 || terminated) && (text.get(offset + stride - 1) != '\n'
+                        || (separator == 2 && text.get(offset + cols) != '\r'))) {
+                    throw new IllegalArgumentException("Maze rows must all have the same length");
+                }
+            }
+        });
+
+        int[] cells = new int[keyCells.length()];
+        for (int key = 0; key < cells.length; key++) {
+            cells[key] = keyCells.get(key);
+        }
+        return new CompiledMaze(tiles, width, height, start.get(), cells);
+    }
+
+    /**
+     * Loads a binary maze written by {@link #save(CompiledMaze, Path)}, using
+     * the mapped file as the grid without copying it.
+     *
+     * @param path The file to load.
+     * @return The compiled maze, backed by the read-only mapped file.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a valid binary maze.
+     */
+    public static CompiledMaze loadBinary(Path path) throws IOException {
+        MappedByteBuffer file = map(path);
+        if (file.capacity() < FIXED_HEADER || file.getInt(0) != MAGIC || file.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a binary maze file");
+        }
+        int width = file.getInt(8), height = file.getInt(12), start = file.getInt(16), keyCount = file.getInt(20);
+        long header = FIXED_HEADER + (long) keyCount * Integer.BYTES;
+        if (width < 2 || height < 2 || keyCount < 0 || keyCount > CompiledMaze.MAX_KEYS
+                || header + (long) width * height != file.capacity()) {
+            throw new IllegalArgumentException("Corrupt binary maze header");
+        }
+        int[] keyCells = new int[keyCount];
+        for (int key = 0; key < keyCount; key++) {
+            keyCells[key] = file.getInt(FIXED_HEADER + key * Integer.BYTES);
+        }
+        ByteBuffer tiles = file.slice((int) header, width * height);
+
+        // Every interior tile must be a known code, and each key must sit
+        // exactly where the header says
+        IntStream.range(0, (height + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK).parallel().forEach(chunk -> {
+            int end = Math.min(height - 1, (chunk + 1) * ROWS_PER_CHUNK);
+            for (int row = Math.max(1, chunk * ROWS_PER_CHUNK); row < end; row++) {
+                for (int cell = row * width + 1, last = cell + width - 2; cell < last; cell++) {
+                    int tile = tiles.get(cell);
+                    if (tile >= 0 && tile < Integer.SIZE && (PLAIN_TILES & (1 << tile)) != 0) {
+                        continue;
+                    }
+                    int key = tile - CompiledMaze.KEY;
+                    if (key < 0 || key >= keyCount || keyCells[key] != cell) {
+                        throw new IllegalArgumentException("Invalid tile at cell " + cell);
+                    }
+                }
+            }
+        });
+
+        // The ring must be walls, which also keeps every key and the start inside
+        for (int cell = 0; cell < width; cell++) {
+            if (tiles.get(cell) != CompiledMaze.WALL || tiles.get(tiles.capacity() - 1 - cell) != CompiledMaze.WALL) {
+                throw new IllegalArgumentException("Invalid tile at cell " + cell);
+            }
+        }
+        for (int row = 1; row < height - 1; row++) {
+            if (tiles.get(row * width) != CompiledMaze.WALL || tiles.get(row * width + width - 1) != CompiledMaze.WALL) {
+                throw new IllegalArgumentException("Invalid tile at row " + row);
+            }
+        }
+        for (int key = 0; key < keyCount; key++) {
+            int cell = keyCells[key];
+            if (cell != -1 && (cell < 0 || cell >= tiles.capacity() || tiles.get(cell) != CompiledMaze.KEY + key)) {
+                throw new IllegalArgumentException("Key " + key + " is not where the header says");
+            }
+        }
+        if (start != -1 && (start < 0 || start >= tiles.capacity() || tiles.get(start) != CompiledMaze.OPEN)) {
+            throw new IllegalArgumentException("Initial state is not on an open tile");
+        }
+        return new CompiledMaze(tiles, width, height, start, keyCells);
+    }
+
+    /**
+     * Writes a maze in the binary format read by {@link #loadBinary(Path)}.
+     *
+     * @param maze The CompiledMaze to write.
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(CompiledMaze maze, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER + maze.keyCount() * Integer.BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(maze.width()).putInt(maze.height())
+                .putInt(maze.start()).putInt(maze.keyCount());
+        for (int key = 0; key < maze.keyCount(); key++) {
+            header.putInt(maze.keyCell(key));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : new ByteBuffer[] { header.flip(), maze.tiles() }) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the whole file read-only; also used for other files of this package
+     * that are read in place, such as {@link PathDatabase}'s.
+     *
+     * @param path The file to map.
+     * @return The mapped contents.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is 2 GB or larger.
+     */
+    static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Mapped files must be smaller than 2 GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Builds the table translating text characters into tile codes, assigning key
+     * bits in sorted order as {@link CompiledMaze#CompiledMaze(MazeProblem)} does.
+     *
+     * @param keyTiles The set of single-character key tiles.
+     * @return The code of each ASCII character; INVALID for unknown characters
+     *         and INITIAL for 'I'.
+     * @throws IllegalArgumentException If a key tile is reserved, not a single
+     *                                  ASCII character, or there are too many.
+     */
+    private static byte[] tileCodes(Set<String> keyTiles) {
+        if (keyTiles.size() > CompiledMaze.MAX_KEYS) {
+            throw new IllegalArgumentException("Mazes may have at most " + CompiledMaze.MAX_KEYS + " keys");
+        }
+        byte[] codes = new byte[128];
+        Arrays.fill(codes, INVALID);
+        codes['X'] = CompiledMaze.WALL;
+        codes['.'] = CompiledMaze.OPEN;
+        codes['M'] = CompiledMaze.MUD;
+        codes['I'] = INITIAL;
+        int key = 0;
+        for (String tile : new TreeSet<>(keyTiles)) {
+            if (tile.length() != 1 || tile.charAt(0) >= codes.length || codes[tile.charAt(0)] != INVALID) {
+                throw new IllegalArgumentException("Key tiles must be single, unreserved ASCII characters");
+            }
+            codes[tile.charAt(0)] = (byte) (CompiledMaze.KEY + key++);
+        }
+        return codes;
+    }
+
+    /**
+     * Records the cell of the initial state, which may appear only once.
+     *
+     * @param start The initial state found so far, or -1.
+     * @param cell  The cell holding 'I'.
+     */
+    private static void claimStart(AtomicInteger start, int cell) {
+        if (!start.compareAndSet(-1, cell)) {
+            throw new IllegalArgumentException("Maze contains more than one initial state");
+        }
+    }
+
+    /**
+     * Records the cell of a key, which may appear only once.
+     *
+     * @param found The cell of each key found so far, or -1.
+     * @param key   The index of the key.
+     * @param cell  The cell holding it.
+     */
+    private static void claimKey(AtomicIntegerArray found, int key, int cell) {
+        if (!found.compareAndSet(key, -1, cell)) {
+            throw new IllegalArgumentException("Maze contains key " + key + " more than once");
+        }
+    }
+
+}
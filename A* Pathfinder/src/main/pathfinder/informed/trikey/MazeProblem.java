@@ -16,7 +16,14 @@ public class MazeProblem {
     private final MazeState INITIAL_STATE;
     private final Set<MazeState> KEY_PIECES;
     private static final Map<String, MazeState> TRANS_MAP = createTransitions();
-    private static final Set<String> KEY_TILES = new HashSet<>(Arrays.asList("1", "2", "3"));
+    private final Set<String> KEY_TILES;
+    private static final Set<String> DEFAULT_KEY_TILES = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("1", "2", "3")));
+    private static final String RESERVED_TILES = "XIM.";
+    // Multiplier of the polynomial grid hash; odd, so its powers never vanish
+    private static final long HASH_BASE = 0x9E3779B97F4A7C15L;
+    // Grid hash, remembered by gridHash(); 0 until first computed
+    private volatile long gridHash;
 
     /**
      * @return Creates the transition map that maps String actions to MazeState
@@ -51,6 +58,26 @@ public class MazeProblem {
      *             </pre>
      */
     public MazeProblem(String[] maze) {
+        this(maze, DEFAULT_KEY_TILES);
+    }
+
+    /**
+     * Constructs a new MazeProblem whose key pieces are the given tiles instead of
+     * the default '1', '2', '3'; a solution must collect every one of them.
+     * 
+     * @param maze     An array of Strings formatted as for
+     *                 {@link #MazeProblem(String[])}, using the given key tiles.
+     * @param keyTiles The set of single-character key tiles, e.g.,
+     *                 <code>{"1", "2", ..., "9", "a", "b"}</code>; must not
+     *                 include 'X', 'I', 'M', or '.'.
+     */
+    public MazeProblem(String[] maze, Set<String> keyTiles) {
+        for (String key : keyTiles) {
+            if (key.length() != 1 || RESERVED_TILES.indexOf(key.charAt(0)) != -1) {
+                throw new IllegalArgumentException("Key tiles must be single, unreserved characters");
+            }
+        }
+        this.KEY_TILES = Collections.unmodifiableSet(new HashSet<>(keyTiles));
         this.maze = maze;
         this.rows = maze.length;
         this.cols = (rows == 0) ? 0 : maze[0].length();
@@ -66,17 +93,15 @@ public class MazeProblem {
                 case 'I':
                     foundInitial = new MazeState(col, row, null);
                     break;
-                case '1':
-                case '2':
-                case '3':
-                    keys.add(new MazeState(col, row, "" + cell));
-                    break;
                 case '.':
                 case 'X':
                 case 'M':
                     break;
                 default:
-                    throw new IllegalArgumentException("Maze formatted invalidly");
+                    if (!KEY_TILES.contains("" + cell)) {
+                        throw new IllegalArgumentException("Maze formatted invalidly");
+                    }
+                    keys.add(new MazeState(col, row, "" + cell));
                 }
             }
         }
@@ -108,12 +133,97 @@ public class MazeProblem {
 
     /**
      * Returns the Set of String tiles representing the different key pieces. i.e.,
-     * <code>{"1", "2", "3"}</code>
+     * <code>{"1", "2", "3"}</code> unless other key tiles were given on construction
      * 
      * @return The set of String key tiles as they appear in the maze.
      */
     public Set<String> getKeyTiles() {
-        return KEY_TILES;
+        return this.KEY_TILES;
+    }
+
+    /**
+     * Returns the number of rows in the maze.
+     * 
+     * @return The maze height.
+     */
+    int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Returns the number of columns in the maze.
+     * 
+     * @return The maze width.
+     */
+    int cols() {
+        return this.cols;
+    }
+
+    /**
+     * Returns the raw tile character at the given position, as it appears in the
+     * maze Strings.
+     * 
+     * @param col Column index, within bounds.
+     * @param row Row index, within bounds.
+     * @return The tile character, e.g., 'X', '.', 'M', 'I', or a key tile.
+     */
+    char tile(int col, int row) {
+        return this.maze[row].charAt(col);
+    }
+
+    /**
+     * Rolling hash of the grid: the sum of tile * HASH_BASE^i over the tiles in
+     * reading order, with a line break after every row so that grids of
+     * different shapes differ. The initial state hashes as open floor, so the
+     * same maze hashes alike wherever it starts. Computed once, then remembered.
+     * 
+     * @return The 64-bit hash of the grid.
+     */
+    long gridHash() {
+        long hash = gridHash;
+        if (hash == 0) {
+            long power = 1;
+            for (String line : maze) {
+                for (int col = 0; col <= line.length(); col++) {
+                    hash += hashTile(col < line.length() ? line.charAt(col) : '\n') * power;
+                    power *= HASH_BASE;
+                }
+            }
+            gridHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Rolls the grid hash over a one-tile edit: only the edited tile's term of
+     * the sum changes, so this costs O(rows + log(tiles)) instead of a rehash.
+     * 
+     * @param col  Column of the edited tile, within bounds.
+     * @param row  Row of the edited tile, within bounds.
+     * @param tile The tile's new character.
+     * @return The {@link #gridHash()} the grid would have after the edit.
+     */
+    long editedHash(int col, int row, char tile) {
+        int position = col;
+        for (int above = 0; above < row; above++) {
+            position += maze[above].length() + 1;
+        }
+        long power = 1, base = HASH_BASE;
+        for (int exponent = position; exponent != 0; exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                power *= base;
+            }
+            base *= base;
+        }
+        return gridHash() + (hashTile(tile) - hashTile(tile(col, row))) * power;
+    }
+
+    /**
+     * @param tile A tile character.
+     * @return The tile's term in the grid hash, before its power of HASH_BASE.
+     */
+    private static long hashTile(char tile) {
+        return tile == 'I' ? '.' : tile;
     }
 
     /**
@@ -152,14 +262,14 @@ public class MazeProblem {
         for (Map.Entry<String, MazeState> action : TRANS_MAP.entrySet()) {
             MazeState actionMod = action.getValue(), newState = new MazeState(state.col(), state.row(), null);
             newState = newState.add(actionMod);
-            String tile = "" + this.maze[newState.row()].charAt(newState.col());
-            String keyState = (KEY_TILES.contains(tile)) ? tile : null;
 
             // If the given state *is* a valid transition (i.e., within
             // map bounds and no wall at the position)...
             if (newState.row() >= 0 && newState.row() < rows && newState.col() >= 0 && newState.col() < cols
                     && maze[newState.row()].charAt(newState.col()) != 'X') {
                 // ...then add it to the result!
+                String tile = "" + this.maze[newState.row()].charAt(newState.col());
+                String keyState = (KEY_TILES.contains(tile)) ? tile : null;
                 result.put(action.getKey(), new MazeState(newState.col(), newState.row(), keyState));
             }
         }
@@ -192,10 +302,17 @@ public class MazeProblem {
 
         // For each action, modify the movingState, and then check that we have landed
         // in
-        // a legal position in this maze
+        // a legal position in this maze; unknown actions and moves off the
+        // grid fail the test just as walls do
         for (String action : possibleSoln) {
             MazeState actionMod = TRANS_MAP.get(action);
+            if (actionMod == null) {
+                return result;
+            }
             movingState = movingState.add(actionMod);
+            if (!inBounds(movingState.col(), movingState.row())) {
+                return result;
+            }
             String tile = "" + maze[movingState.row()].charAt(movingState.col());
             if (tile.equals("X")) {
                 return result;
@@ -210,4 +327,54 @@ public class MazeProblem {
         return result;
     }
 
+    /**
+     * Tests a packed solution without unpacking it into action Strings; see
+     * {@link #testSolution(List)}.
+     * 
+     * @param possibleSoln A possible solution to test, as packed moves.
+     * @return A 2-element array of ints of the format [isSoln, cost]
+     */
+    public int[] testSolution(PackedPath possibleSoln) {
+        if (possibleSoln == null) {
+            throw new IllegalArgumentException(
+                    "Tried to test a solution but the solution was null (you said there was no solution)");
+        }
+
+        // Column and row offsets of each direction index, in the order of
+        // "U", "D", "L", "R"
+        int[] colMods = { 0, 0, -1, 1 }, rowMods = { -1, 1, 0, 0 };
+        int col = INITIAL_STATE.col(), row = INITIAL_STATE.row(), cost = 0;
+        Set<Character> collectedKeys = new HashSet<>();
+        int[] result = { 0, -1 };
+        for (PrimitiveIterator.OfInt moves = possibleSoln.iterator(); moves.hasNext();) {
+            int direction = moves.nextInt();
+            col += colMods[direction];
+            row += rowMods[direction];
+            if (!inBounds(col, row)) {
+                return result;
+            }
+            char tile = maze[row].charAt(col);
+            if (tile == 'X') {
+                return result;
+            }
+            // The constructor rejected every unreserved tile that is not a key
+            if (RESERVED_TILES.indexOf(tile) == -1) {
+                collectedKeys.add(tile);
+            }
+            cost += tile == 'M' ? 3 : 1;
+        }
+        result[0] = collectedKeys.size() == KEY_TILES.size() ? 1 : 0;
+        result[1] = cost;
+        return result;
+    }
+
+    /**
+     * @param col A column, possibly off the grid.
+     * @param row A row, possibly off the grid.
+     * @return True if the position is inside the maze.
+     */
+    private boolean inBounds(int col, int row) {
+        return row >= 0 && row < rows && col >= 0 && col < maze[row].length();
+    }
+
 }
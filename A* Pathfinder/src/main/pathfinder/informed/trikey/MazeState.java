@@ -1,7 +1,5 @@
 package main.pathfinder.informed.trikey;
 
-import java.util.Objects;
-
 /**
  * Maze Pathfinding representation of a given state, i.e., an occupiable
  * position in the given maze.
@@ -85,7 +83,8 @@ public class MazeState {
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.col, this.row, this.KEY_PIECE);
+        // Consistent with equals, which compares position only
+        return 31 * this.col + this.row;
     }
 
     @Override
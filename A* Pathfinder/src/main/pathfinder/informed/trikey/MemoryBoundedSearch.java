@@ -0,0 +1,261 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Memory-bounded optimal search for mazes whose (cell, keys collected) state
+ * space is too large for A*'s per-state arrays. IDA* (iterative deepening
+ * A*) runs depth-first searches that cut off every path whose f = g + h
+ * exceeds a threshold, raising the threshold to the smallest f that was cut
+ * off until a goal is found; with the consistent key-tour heuristic the
+ * first goal found is optimal. The depth-first search keeps only the current
+ * path, on an explicit stack rather than the call stack.<br>
+ * Grids reach the same state along many paths, which plain IDA* would
+ * search again each time, so a fixed-size transposition table remembers the
+ * cheapest g at which each state was entered in the current iteration, and
+ * cuts off paths that enter it again no more cheaply. The table is
+ * direct-mapped: a state evicts whatever shared its slot. Memory use is the
+ * table plus the current path, whatever the size of the state space; a
+ * small table only costs time, in states searched again.<br>
+ * Since depth-first search cannot tell an unsolvable maze from a long
+ * solution, mazes where some key is unreachable are rejected up front with
+ * {@link CompiledMaze#keysReachable()}.<br>
+ * Instances are not thread-safe; use one per thread.
+ */
+public class MemoryBoundedSearch {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    /** Transposition table entries used by the no-argument constructor. */
+    public static final int DEFAULT_TABLE_SIZE = 1 << 20;
+    private static final int UNREACHABLE = BitboardDistances.UNREACHABLE;
+
+    // Slot i holds state tableStates[i], entered at cost tableCosts[i], and is
+    // only valid where tableIterations[i] is the current iteration
+    private final int[] tableStates, tableCosts, tableIterations;
+    private final int tableMask, tableShift;
+
+    // The current path: the state at each depth, its cost, and the next
+    // direction to try from it; the move from depth d is directions[d] - 1
+    private int[] pathStates = new int[64], pathCosts = new int[64];
+    private byte[] directions = new byte[64];
+    // Number of moves of the solution found by the last successful search()
+    private int pathLength;
+
+    private int iteration, iterations;
+    private long expanded, lastIterationExpanded, evictions;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a search with a transposition table of DEFAULT_TABLE_SIZE entries,
+     * about 12 MB.
+     */
+    public MemoryBoundedSearch() {
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Creates a search with a transposition table of the given size, rounded
+     * up to a power of two; each entry takes 12 bytes.
+     *
+     * @param tableSize The number of transposition table entries.
+     * @throws IllegalArgumentException If tableSize is less than 1 or more
+     *                                  than 2^30.
+     */
+    public MemoryBoundedSearch(int tableSize) {
+        if (tableSize < 1 || tableSize > 1 << 30) {
+            throw new IllegalArgumentException("Table size must be between 1 and 2^30 entries");
+        }
+        int capacity = Integer.highestOneBit(tableSize);
+        if (capacity < tableSize) {
+            capacity <<= 1;
+        }
+        this.tableStates = new int[capacity];
+        this.tableCosts = new int[capacity];
+        this.tableIterations = new int[capacity];
+        this.tableMask = capacity - 1;
+        this.tableShift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Finds an optimal action sequence that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         there is no solution.
+     */
+    public List<String> solve(CompiledMaze maze) {
+        PackedPath path = solvePacked(maze);
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * Finds an optimal sequence of moves that collects every key in the maze.
+     *
+     * @param maze The CompiledMaze to search.
+     * @return The packed moves, or null if there is no solution.
+     */
+    public PackedPath solvePacked(CompiledMaze maze) {
+        iterations = 0;
+        expanded = lastIterationExpanded = evictions = 0;
+        if (!maze.keysReachable()) {
+            return null;
+        }
+        int initial = maze.state(maze.start(), 0);
+        if (maze.keysOf(initial) == maze.allKeys()) {
+            return new PackedPath();
+        }
+        // Thresholds rise with every iteration, so each is a new table generation
+        for (int threshold = maze.keyTour(initial);;) {
+            if (++iteration == 0) {
+                Arrays.fill(tableIterations, 0);
+                iteration = 1;
+            }
+            iterations++;
+            long before = expanded;
+            int next = search(maze, initial, threshold);
+            lastIterationExpanded = expanded - before;
+            if (next == -1) {
+                return path();
+            }
+            threshold = next;
+        }
+    }
+
+    /**
+     * @return The number of states expanded by the most recent search, over
+     *         all of its iterations.
+     */
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return The number of iterations, i.e., thresholds, the most recent search
+     *         needed.
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * The re-expansion the memory bound cost: A* expands every state at most
+     * once because it keeps all of them, while this search expands states
+     * again in every iteration, and again within one whenever the table has
+     * forgotten them.
+     *
+     * @return The number of expansions of the most recent search before its
+     *         final iteration.
+     */
+    public long reExpansions() {
+        return expanded - lastIterationExpanded;
+    }
+
+    /**
+     * @return The number of times the most recent search overwrote a table
+     *         entry of the same iteration holding another state; each may
+     *         cost that state's subtree being searched again.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * One depth-first iteration, cutting off paths whose f exceeds the
+     * threshold. On success the path arrays hold the solution's first
+     * pathLength moves.
+     *
+     * @param maze      The CompiledMaze to search.
+     * @param initial   The initial state.
+     * @param threshold The largest f to search.
+     * @return -1 if a goal was found, else the smallest f that was cut off.
+     */
+    private int search(CompiledMaze maze, int initial, int threshold) {
+        int allKeys = maze.allKeys(), next = UNREACHABLE, depth = 0;
+        pathStates[0] = initial;
+        pathCosts[0] = 0;
+        directions[0] = 0;
+        record(initial, 0);
+
+        while (depth >= 0) {
+            if (directions[depth] == 0) {
+                expanded++;
+            }
+            if (directions[depth] == 4) {
+                depth--;
+                continue;
+            }
+            int state = pathStates[depth], direction = directions[depth]++;
+            int cell = maze.neighbor(maze.cellOf(state), direction);
+            if (maze.isWall(cell)) {
+                continue;
+            }
+            int child = maze.state(cell, maze.keysOf(state) | maze.keyBit(cell));
+            int g = pathCosts[depth] + maze.cost(cell), f = g + maze.keyTour(child);
+            if (f > threshold) {
+                next = Math.min(next, f);
+                continue;
+            }
+            if (maze.keysOf(child) == allKeys) {
+                pathLength = depth + 1;
+                return -1;
+            }
+            if (!record(child, g)) {
+                continue;
+            }
+            if (++depth == pathStates.length) {
+                pathStates = Arrays.copyOf(pathStates, depth * 2);
+                pathCosts = Arrays.copyOf(pathCosts, depth * 2);
+                directions = Arrays.copyOf(directions, depth * 2);
+            }
+            pathStates[depth] = child;
+            pathCosts[depth] = g;
+            directions[depth] = 0;
+        }
+        return next;
+    }
+
+    /**
+     * Enters a state in the transposition table unless the table shows it was
+     * already entered at least as cheaply in this iteration.
+     *
+     * @param state A packed state.
+     * @param g     The cost of the path to it.
+     * @return False if the path should be cut off.
+     */
+    private boolean record(int state, int g) {
+        // Fibonacci hashing: the top bits of the product mix every bit of state
+        int slot = (state * 0x9E3779B9) >>> tableShift & tableMask;
+        if (tableIterations[slot] == iteration) {
+            if (tableStates[slot] == state) {
+                if (tableCosts[slot] <= g) {
+                    return false;
+                }
+            } else {
+                evictions++;
+            }
+        }
+        tableStates[slot] = state;
+        tableCosts[slot] = g;
+        tableIterations[slot] = iteration;
+        return true;
+    }
+
+    /**
+     * @return The moves of the solution left on the path arrays.
+     */
+    private PackedPath path() {
+        PackedPath result = new PackedPath(pathLength);
+        for (int depth = 0; depth < pathLength; depth++) {
+            result.set(depth, directions[depth] - 1);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,241 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Compact sequence of moves, stored at 2 bits per move in a long[]: 32 moves
+ * per long, against a list node and String reference per move in a
+ * List&lt;String&gt;. Moves are the direction indexes 0 = "U", 1 = "D", 2 = "L",
+ * 3 = "R", in the order of the legacy action Strings.<br>
+ * The legacy form is only produced on demand: {@link #asList()} is a view
+ * that decodes each action when it is read.
+ */
+public class PackedPath {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int MOVES_PER_WORD = 32;
+
+    private long[] words;
+    private int size;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates an empty path.
+     */
+    public PackedPath() {
+        this.words = new long[1];
+    }
+
+    /**
+     * Creates a path of the given length whose moves are all "U", to be filled
+     * in with {@link #set(int, int)}, e.g., while walking a parent chain backward.
+     *
+     * @param size The number of moves.
+     */
+    PackedPath(int size) {
+        this.words = new long[Math.max(1, (size + MOVES_PER_WORD - 1) / MOVES_PER_WORD)];
+        this.size = size;
+    }
+
+    /**
+     * Restores a path from the words returned by {@link #toLongArray()}.
+     *
+     * @param words The packed moves.
+     * @param size  The number of moves.
+     * @throws IllegalArgumentException If size does not fit in words.
+     */
+    public PackedPath(long[] words, int size) {
+        if (size < 0 || (long) size > (long) words.length * MOVES_PER_WORD) {
+            throw new IllegalArgumentException("Path size does not match its words");
+        }
+        this.words = Arrays.copyOf(words, Math.max(1, (size + MOVES_PER_WORD - 1) / MOVES_PER_WORD));
+        this.size = size;
+        if (size % MOVES_PER_WORD != 0) {
+            // Clear any bits past the last move, so equal paths have equal words
+            this.words[size / MOVES_PER_WORD] &= (1L << (2 * (size % MOVES_PER_WORD))) - 1;
+        }
+    }
+
+    /**
+     * Packs a list of actions.
+     *
+     * @param actions A List of actions of the format ["R", "R", "L", ...].
+     * @return The packed path.
+     * @throws IllegalArgumentException If an action is not "U", "D", "L", or "R".
+     */
+    public static PackedPath of(List<String> actions) {
+        PackedPath result = new PackedPath(actions.size());
+        int index = 0;
+        for (String action : actions) {
+            result.set(index++, directionOf(action));
+        }
+        return result;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * @return The number of moves.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index A move index in [0, size).
+     * @return The direction of that move, 0-3.
+     */
+    public int direction(int index) {
+        Objects.checkIndex(index, size);
+        return (int) (words[index / MOVES_PER_WORD] >>> (2 * (index % MOVES_PER_WORD))) & 3;
+    }
+
+    /**
+     * @param index A move index in [0, size).
+     * @return The action String of that move.
+     */
+    public String action(int index) {
+        return CompiledMaze.ACTIONS[direction(index)];
+    }
+
+    /**
+     * Appends a move.
+     *
+     * @param direction The direction of the move, 0-3.
+     */
+    public void add(int direction) {
+        if (size == words.length * MOVES_PER_WORD) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        set(size++, direction);
+    }
+
+    /**
+     * Appends a move.
+     *
+     * @param action One of "U", "D", "L", "R".
+     * @throws IllegalArgumentException If the action is not one of those.
+     */
+    public void add(String action) {
+        add(directionOf(action));
+    }
+
+    /**
+     * Replaces a move.
+     *
+     * @param index     A move index in [0, size).
+     * @param direction The direction of the move, 0-3.
+     */
+    void set(int index, int direction) {
+        int word = index / MOVES_PER_WORD, shift = 2 * (index % MOVES_PER_WORD);
+        words[word] = (words[word] & ~(3L << shift)) | ((long) (direction & 3) << shift);
+    }
+
+    /**
+     * @return An iterator over the directions of the moves, which does not box.
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+
+            private int index;
+            private long word;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                // Load each word once and shift through its moves
+                if (index % MOVES_PER_WORD == 0) {
+                    word = words[index / MOVES_PER_WORD];
+                }
+                int direction = (int) word & 3;
+                word >>>= 2;
+                index++;
+                return direction;
+            }
+
+        };
+    }
+
+    /**
+     * @return A read-only view of the moves as action Strings, decoded as they
+     *         are read; copy it into an ArrayList for a modifiable list.
+     */
+    public List<String> asList() {
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(int index) {
+                return action(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    /**
+     * @return The packed moves, 32 per long, first move in the lowest bits; pass
+     *         them with {@link #size()} to {@link #PackedPath(long[], int)}.
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(words, (size + MOVES_PER_WORD - 1) / MOVES_PER_WORD);
+    }
+
+    /**
+     * @return The backing words, without copying; only the first size moves are
+     *         meaningful. Callers must not modify them.
+     */
+    long[] words() {
+        return words;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PackedPath && ((PackedPath) other).size == size
+                && Arrays.equals(toLongArray(), ((PackedPath) other).toLongArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(toLongArray());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(size);
+        for (PrimitiveIterator.OfInt moves = iterator(); moves.hasNext();) {
+            result.append(CompiledMaze.ACTIONS[moves.nextInt()]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param action One of "U", "D", "L", "R".
+     * @return Its direction index.
+     * @throws IllegalArgumentException If the action is not one of those.
+     */
+    private static int directionOf(String action) {
+        for (int direction = 0; direction < CompiledMaze.ACTIONS.length; direction++) {
+            if (CompiledMaze.ACTIONS[direction].equals(action)) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException("Unknown action: " + action);
+    }
+
+}
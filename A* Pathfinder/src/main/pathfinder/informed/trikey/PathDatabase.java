@@ -0,0 +1,394 @@
+package main.pathfinder.informed.trikey;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed path database (CPD) for point-to-point queries on a static maze.
+ * An offline build stores, for every open source cell, the first move of an
+ * optimal path toward every target cell, mud included. A query then needs no
+ * search at all: it looks up the first move from the source, takes it, and
+ * repeats from the cell it lands on, so its time is proportional to the
+ * length of the path alone.<br>
+ * Open cells are numbered in depth-first order, which keeps nearby cells, and
+ * so cells reached by the same first move, close together in the numbering.
+ * Each source's table of first moves over that numbering is stored as runs
+ * of equal moves, and a lookup is a binary search over the source's runs.
+ * Depth-first order also makes every connected region a contiguous range of
+ * numbers; targets in another region, and the source itself, can take any
+ * move, so they extend the runs around them instead of breaking them.<br>
+ * Building runs one Dijkstra search per open cell, in parallel over sources,
+ * so it is quadratic in the number of open cells and meant for maps of
+ * moderate size that answer very many queries. {@link #build(CompiledMaze, Path)}
+ * writes the database to a file, and {@link #load(Path)} maps that file and
+ * answers queries straight from it.
+ */
+public class PathDatabase {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // File header: magic, version, width, height, openCount, regionCount, runCount;
+    // then ranks, regionStarts, runOffsets, runs, all ints
+    private static final int MAGIC = 0x43504442, VERSION = 1, HEADER = 7 * Integer.BYTES;
+    // A run packs the rank it starts at above MOVE_BITS bits of direction
+    private static final int MOVE_BITS = 2, NO_RANK = -1;
+
+    private final int width, height;
+    private final int[] offsets;
+    // Depth-first rank of every cell, NO_RANK for walls
+    private final IntBuffer ranks;
+    // First rank of each connected region, plus the total number of open cells
+    private final int[] regionStarts;
+    // The runs of the source of rank r are runs[runOffsets[r]] up to runs[runOffsets[r + 1]]
+    private final IntBuffer runOffsets, runs;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Reads a database laid out in the given buffer, without copying it.
+     *
+     * @param file The contents of a database file.
+     * @throws IllegalArgumentException If the buffer does not hold a valid database.
+     */
+    private PathDatabase(ByteBuffer file) {
+        if (file.capacity() < HEADER || file.getInt(0) != MAGIC || file.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a path database file");
+        }
+        this.width = file.getInt(8);
+        this.height = file.getInt(12);
+        int openCount = file.getInt(16), regionCount = file.getInt(20), runCount = file.getInt(24);
+        long cells = (long) width * height;
+        if (width < 2 || height < 2 || openCount < 0 || regionCount < 0 || runCount < 0
+                || HEADER + (cells + regionCount + 1 + openCount + 1 + runCount) * Integer.BYTES != file.capacity()) {
+            throw new IllegalArgumentException("Corrupt path database header");
+        }
+        IntBuffer ints = file.position(HEADER).slice().asIntBuffer();
+        this.ranks = ints.slice(0, (int) cells);
+        this.regionStarts = new int[regionCount + 1];
+        ints.get((int) cells, regionStarts);
+        int offsetsAt = (int) cells + regionCount + 1;
+        this.runOffsets = ints.slice(offsetsAt, openCount + 1);
+        this.runs = ints.slice(offsetsAt + openCount + 1, runCount);
+        this.offsets = new int[] { -width, width, -1, 1 };
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Computes the first-move tables of every open cell of the given maze in
+     * parallel and writes them, compressed, to a file.
+     *
+     * @param maze The CompiledMaze to build the database for.
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException              If the file cannot be written.
+     * @throws IllegalArgumentException If the maze has too many open cells to
+     *                                  number within a run.
+     */
+    public static void build(CompiledMaze maze, Path path) throws IOException {
+        int cells = maze.cellCount();
+        int[] ranks = new int[cells], cellsByRank = new int[cells];
+        List<Integer> starts = new ArrayList<>();
+        int openCount = rank(maze, ranks, cellsByRank, starts);
+        if (openCount >= 1 << (Integer.SIZE - 1 - MOVE_BITS)) {
+            throw new IllegalArgumentException("Too many open cells for a path database");
+        }
+        int[] regionStarts = new int[starts.size() + 1];
+        for (int region = 0; region < starts.size(); region++) {
+            regionStarts[region] = starts.get(region);
+        }
+        regionStarts[starts.size()] = openCount;
+
+        // Each worker thread reuses one set of search arrays for all its sources
+        ThreadLocal<int[]> dist = ThreadLocal.withInitial(() -> new int[cells]);
+        ThreadLocal<byte[]> firstMoves = ThreadLocal.withInitial(() -> new byte[cells]);
+        ThreadLocal<BucketQueue> open = ThreadLocal.withInitial(BucketQueue::new);
+        int[][] tables = IntStream.range(0, openCount).parallel()
+                .mapToObj(rank -> compress(maze, cellsByRank, regionStarts, rank,
+                        dijkstra(maze, cellsByRank[rank], dist.get(), firstMoves.get(), open.get())))
+                .toArray(int[][]::new);
+
+        long runCount = 0;
+        for (int[] table : tables) {
+            runCount += table.length;
+        }
+        if (HEADER + ((long) cells + regionStarts.length + openCount + 1 + runCount) * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Path database would not fit in a 2 GB file");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (int value : new int[] { MAGIC, VERSION, maze.width(), maze.height(), openCount,
+                    regionStarts.length - 1, (int) runCount }) {
+                out.writeInt(value);
+            }
+            for (int rank : ranks) {
+                out.writeInt(rank);
+            }
+            for (int start : regionStarts) {
+                out.writeInt(start);
+            }
+            int offset = 0;
+            for (int[] table : tables) {
+                out.writeInt(offset);
+                offset += table.length;
+            }
+            out.writeInt(offset);
+            for (int[] table : tables) {
+                for (int run : table) {
+                    out.writeInt(run);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a database file written by {@link #build(CompiledMaze, Path)} and
+     * answers queries straight from the mapping.
+     *
+     * @param path The file to load.
+     * @return The database.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a valid database.
+     */
+    public static PathDatabase load(Path path) throws IOException {
+        return new PathDatabase(MazeLoader.map(path));
+    }
+
+    /**
+     * Converts a maze position into its cell index, as
+     * {@link CompiledMaze#cell(int, int)} does for the maze the database was
+     * built from.
+     *
+     * @param col Column of the position in the original maze.
+     * @param row Row of the position in the original maze.
+     * @return The cell index.
+     */
+    public int cell(int col, int row) {
+        return (row + 1) * width + col + 1;
+    }
+
+    /**
+     * Looks up the first move of an optimal path between two cells.
+     *
+     * @param from The cell to start from.
+     * @param to   The cell to reach.
+     * @return The direction of the first move, or -1 if the cells are the same,
+     *         either is a wall or out of bounds, or there is no path.
+     */
+    public int firstMove(int from, int to) {
+        if (from == to || from < 0 || to < 0 || from >= ranks.limit() || to >= ranks.limit()) {
+            return -1;
+        }
+        int source = ranks.get(from), target = ranks.get(to);
+        if (source == NO_RANK || target == NO_RANK || region(source) != region(target)) {
+            return -1;
+        }
+        return move(source, target);
+    }
+
+    /**
+     * Walks first moves from one cell to another, with no search.
+     *
+     * @param from The cell to start from.
+     * @param to   The cell to reach.
+     * @return The moves of an optimal path, or null if either cell is a wall
+     *         or out of bounds, or there is no path.
+     */
+    public PackedPath path(int from, int to) {
+        PackedPath result = new PackedPath();
+        if (from == to) {
+            return from >= 0 && from < ranks.limit() && ranks.get(from) != NO_RANK ? result : null;
+        }
+        if (firstMove(from, to) == -1) {
+            return null;
+        }
+        int target = ranks.get(to);
+        for (int cell = from; cell != to;) {
+            int direction = move(ranks.get(cell), target);
+            result.add(direction);
+            cell += offsets[direction];
+        }
+        return result;
+    }
+
+    /**
+     * Returns a sequence of actions between two positions, ignoring keys.
+     *
+     * @param fromCol Column to start from.
+     * @param fromRow Row to start from.
+     * @param toCol   Column to end on.
+     * @param toRow   Row to end on.
+     * @return A List of actions of the format ["R", "R", "L", ...], or null if
+     *         either position is a wall or there is no path between them.
+     */
+    public List<String> route(int fromCol, int fromRow, int toCol, int toRow) {
+        if (fromCol < 0 || toCol < 0 || fromCol >= width - 2 || toCol >= width - 2
+                || fromRow < 0 || toRow < 0 || fromRow >= height - 2 || toRow >= height - 2) {
+            return null;
+        }
+        PackedPath path = path(cell(fromCol, fromRow), cell(toCol, toRow));
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
+
+    /**
+     * @return The number of runs stored over all sources; a measure of how well
+     *         the first-move tables compressed.
+     */
+    public int runCount() {
+        return runs.limit();
+    }
+
+    /**
+     * Binary searches the runs of a source for the one covering a target.
+     *
+     * @param source The rank of the source cell.
+     * @param target The rank of a target cell in the same region.
+     * @return The direction of the first move toward the target.
+     */
+    private int move(int source, int target) {
+        int low = runOffsets.get(source), high = runOffsets.get(source + 1) - 1;
+        // The last run starting at or before the target covers it
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (runs.get(middle) >>> MOVE_BITS <= target) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return runs.get(low) & ((1 << MOVE_BITS) - 1);
+    }
+
+    /**
+     * @param rank The rank of an open cell.
+     * @return The index of the connected region holding it.
+     */
+    private int region(int rank) {
+        int index = Arrays.binarySearch(regionStarts, rank);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Numbers the open cells of the maze in depth-first order, one connected
+     * region after another, so each region is a contiguous range of ranks.
+     *
+     * @param maze        The CompiledMaze to number.
+     * @param ranks       Array of length cellCount to receive each cell's rank,
+     *                    NO_RANK for walls.
+     * @param cellsByRank Array of length cellCount to receive the cell of each rank.
+     * @param starts      List to receive the first rank of each region.
+     * @return The number of open cells.
+     */
+    private static int rank(CompiledMaze maze, int[] ranks, int[] cellsByRank, List<Integer> starts) {
+        Arrays.fill(ranks, NO_RANK);
+        int[] stack = new int[64];
+        int count = 0;
+        for (int root = 0; root < ranks.length; root++) {
+            if (maze.isWall(root) || ranks[root] != NO_RANK) {
+                continue;
+            }
+            starts.add(count);
+            int size = 0;
+            stack[size++] = root;
+            while (size > 0) {
+                int cell = stack[--size];
+                if (ranks[cell] != NO_RANK) {
+                    continue;
+                }
+                ranks[cell] = count;
+                cellsByRank[count++] = cell;
+                for (int direction = 3; direction >= 0; direction--) {
+                    int next = maze.neighbor(cell, direction);
+                    if (!maze.isWall(next) && ranks[next] == NO_RANK) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = next;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Dijkstra search over cells from the given source, where moving into a cell
+     * costs {@link CompiledMaze#cost(int)}, recording for every cell the first
+     * move of the cheapest path found to it.
+     *
+     * @param maze       The CompiledMaze to search.
+     * @param source     The cell to search from.
+     * @param dist       Scratch array of length cellCount for the costs.
+     * @param firstMoves Array of length cellCount to receive the first moves;
+     *                   only valid for cells reachable from source.
+     * @param open       A BucketQueue to use as the frontier; cleared before use.
+     * @return firstMoves.
+     */
+    private static byte[] dijkstra(CompiledMaze maze, int source, int[] dist, byte[] firstMoves, BucketQueue open) {
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        open.clear();
+        dist[source] = 0;
+        open.push(source, 0, 0);
+
+        while (!open.isEmpty()) {
+            int cell = open.pop(), g = dist[cell];
+            if (open.poppedF() != g) {
+                continue;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = maze.neighbor(cell, direction);
+                if (maze.isWall(next)) {
+                    continue;
+                }
+                int nextCost = g + maze.cost(next);
+                if (nextCost < dist[next]) {
+                    dist[next] = nextCost;
+                    firstMoves[next] = cell == source ? (byte) direction : firstMoves[cell];
+                    open.push(next, nextCost, nextCost);
+                }
+            }
+        }
+        return firstMoves;
+    }
+
+    /**
+     * Run-length encodes one source's first moves over the ranks of its region.
+     * The source itself takes whatever move its run has, and ranks outside the
+     * region are never looked up, so runs only cover the region.
+     *
+     * @param maze         The CompiledMaze being built for.
+     * @param cellsByRank  The cell of each rank.
+     * @param regionStarts The first rank of each region, then the open cell count.
+     * @param source       The rank of the source cell.
+     * @param firstMoves   The first move toward every cell of the source's region.
+     * @return The runs, each (first rank << MOVE_BITS) | direction; none if the
+     *         source is alone in its region.
+     */
+    private static int[] compress(CompiledMaze maze, int[] cellsByRank, int[] regionStarts, int source,
+            byte[] firstMoves) {
+        int index = Arrays.binarySearch(regionStarts, source);
+        int region = index >= 0 ? index : -index - 2;
+        int[] result = new int[16];
+        int count = 0, last = -1;
+        for (int rank = regionStarts[region]; rank < regionStarts[region + 1]; rank++) {
+            int move = firstMoves[cellsByRank[rank]];
+            if (rank == source || move == last) {
+                continue;
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            // The first run also covers every rank before it
+            result[count] = ((count == 0 ? 0 : rank) << MOVE_BITS) | move;
+            count++;
+            last = move;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+}
@@ -3,86 +3,139 @@ package main.pathfinder.informed.trikey;
 import java.util.*;
 
 /**
- * Maze Pathfinding algorithm that implements a basic, uninformed, breadth-first
- * tree search.
+ * Maze Pathfinding algorithm that implements A* graph search over states of
+ * the form (col, row, keys collected), finding the cheapest route from the
+ * initial state that collects every key piece. Alternative search engines
+ * that return the same optimal cost can be selected through {@link Engine}.
  */
 public class Pathfinder {
 
+    /**
+     * The search algorithms available to {@link Pathfinder#solve(MazeProblem, Engine)}.
+     */
+    public enum Engine {
+        /** A* over (cell, keys collected) states; the default. */
+        A_STAR,
+        /** Jump Point Search; expands far fewer states on open, mud-free floor. */
+        JUMP_POINT,
+        /** Pairwise key costs plus Held-Karp ordering; suited to many keys. */
+        KEY_ROUTER,
+        /** Hash-distributed parallel A*; spreads one huge query over every core. */
+        HASH_DISTRIBUTED,
+        /** A* after filling dead ends and collapsing corridors; suited to maze-like maps. */
+        CORRIDOR,
+        /** IDA* with a fixed-size transposition table; for state spaces too big to keep. */
+        MEMORY_BOUNDED
+    }
+
     /**
      * Given a MazeProblem, which specifies the actions and transitions available in
      * the search, returns a solution to the problem as a sequence of actions that
-     * leads from the initial state to the collection of all three key pieces.
+     * leads from the initial state to the collection of every key piece.
      * 
      * @param problem A MazeProblem that specifies the maze, actions, transitions.
      * @return A List of Strings representing actions that solve the problem of the
-     *         format: ["R", "R", "L", ...]
+     *         format: ["R", "R", "L", ...], or null if there is no solution
      */
     public static List<String> solve(MazeProblem problem) {
-        // Create new list to store the path found and to make a frontier queue
-    	List<String> pathfinder = new LinkedList<String>();
-    	Queue<SearchTreeNode> frontier = new LinkedList<>();
-    	
-    	// store the roots found
-    	SearchTreeNode roots = new SearchTreeNode(problem.getInitial(), null, null);
-    	
-    	// store the roots and add them to the frontier
-    	frontier.add(roots);
-    	
-    	// check when not the frontier is empty
-    	while (!(frontier.isEmpty())) {
-    		
-    		// new node for expanded node
-    		SearchTreeNode expandedNode = frontier.poll();
-            // >> [AF] Remove print statements before submission in the future; they will substantially
-            // slow your solution down! (-0.25) 
-    		System.out.println(expandedNode.state);
-    		
-    		// track transitions in the maze for the pathfinder
-    		Map<String, MazeState> transition = problem.getTransitions(expandedNode.state);
-    		for (Map.Entry<String, MazeState> entry : transition.entrySet()) {
-    			
-    			// key states
-                // >> [AF] entry.getValue() is a next state, but problem.getKeyStates() is a set,
-                // so this will never return a solution
-    			if (entry.getValue().equals(problem.getKeyStates())) {
-    				pathfinder.add(entry.getKey());
-    			}
-    			
-    			// child of the trees
-    			SearchTreeNode child = new SearchTreeNode(entry.getValue(), entry.getKey(), expandedNode);
-    			frontier.add(child);
-    		}
-    	}
-    	
-    	// return null
-    	return null;
+        return solve(new CompiledMaze(problem));
+    }
+
+    /**
+     * Solves an already compiled maze; see {@link #solve(MazeProblem)}. Compiling
+     * once and solving many times skips re-reading the maze Strings.
+     * 
+     * @param maze A CompiledMaze of the problem to solve.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     */
+    public static List<String> solve(CompiledMaze maze) {
+        return solve(maze, Engine.A_STAR);
+    }
+
+    /**
+     * Solves an already compiled maze with A*, returning the moves packed at 2
+     * bits each; see {@link #solve(MazeProblem)}. Long solutions stay compact
+     * until {@link PackedPath#asList()} is asked for.
+     * 
+     * @param maze A CompiledMaze of the problem to solve.
+     * @return The packed moves of an optimal solution, or null if there is no
+     *         solution
+     */
+    public static PackedPath solvePacked(CompiledMaze maze) {
+        return new AStarSearch().solvePacked(maze);
     }
 
     /**
-     * SearchTreeNode private static nested class that is used in the Search
-     * algorithm to construct the Search tree.
-     * [!] You may do whatever you want with this class -- in fact, you'll need 
-     * to add a lot for a successful and efficient solution!
+     * Solves an already compiled maze with A* guided by precomputed ALT
+     * landmarks; see {@link #solve(MazeProblem)}. On mazes with long walls the
+     * landmark bounds are far tighter than Manhattan distance, so many fewer
+     * states are expanded for the same optimal solution.
+     * 
+     * @param maze      A CompiledMaze of the problem to solve.
+     * @param landmarks Landmarks built for the same maze.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     * @throws IllegalArgumentException If the landmarks were built for a maze of
+     *                                  another size.
      */
-    private static class SearchTreeNode {
+    public static List<String> solve(CompiledMaze maze, Landmarks landmarks) {
+        PackedPath path = new AStarSearch().solvePacked(maze, landmarks);
+        return path == null ? null : new ArrayList<>(path.asList());
+    }
 
-        MazeState state;
-        String action;
-        SearchTreeNode parent;
+    /**
+     * Solves the given MazeProblem with the given search engine; see
+     * {@link #solve(MazeProblem)}.
+     * 
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     * @param engine  The search algorithm to use.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     */
+    public static List<String> solve(MazeProblem problem, Engine engine) {
+        return solve(new CompiledMaze(problem), engine);
+    }
 
-        /**
-         * Constructs a new SearchTreeNode to be used in the Search Tree.
-         * 
-         * @param state  The MazeState (row, col) that this node represents.
-         * @param action The action that *led to* this state / node.
-         * @param parent Reference to parent SearchTreeNode in the Search Tree.
-         */
-        SearchTreeNode(MazeState state, String action, SearchTreeNode parent) {
-            this.state = state;
-            this.action = action;
-            this.parent = parent;
+    /**
+     * Solves an already compiled maze with the given search engine; see
+     * {@link #solve(MazeProblem)}.
+     * 
+     * @param maze   A CompiledMaze of the problem to solve.
+     * @param engine The search algorithm to use.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     */
+    public static List<String> solve(CompiledMaze maze, Engine engine) {
+        switch (engine) {
+        case JUMP_POINT:
+            return new JumpPointSearch().solve(maze);
+        case KEY_ROUTER:
+            return KeyRouter.solve(maze);
+        case HASH_DISTRIBUTED:
+            return new HashDistributedSearch().solve(maze);
+        case CORRIDOR:
+            return new CorridorGraph(maze).solve();
+        case MEMORY_BOUNDED:
+            return new MemoryBoundedSearch().solve(maze);
+        default:
+            return new AStarSearch().solve(maze);
         }
+    }
 
+    /**
+     * Solves an already compiled maze with hash-distributed parallel A* on the
+     * given number of worker threads; see {@link #solve(MazeProblem)}.
+     * {@link Engine#HASH_DISTRIBUTED} uses one worker per available processor.
+     * 
+     * @param maze    A CompiledMaze of the problem to solve.
+     * @param workers The number of worker threads to spread the search over.
+     * @return A List of Strings representing actions that solve the problem, or
+     *         null if there is no solution
+     * @throws IllegalArgumentException If workers is less than 1.
+     */
+    public static List<String> solveParallel(CompiledMaze maze, int workers) {
+        return new HashDistributedSearch(workers).solve(maze);
     }
 
 }
@@ -0,0 +1,288 @@
+package main.pathfinder.informed.trikey;
+
+/**
+ * Real-time search agent for game loops that give each agent a small, fixed
+ * budget per tick (LSS-LRTA*: Learning Real-Time A* with a local search
+ * space). Each call to {@link #step()} does a bounded amount of work and then
+ * commits to exactly one move:<br>
+ * - Lookahead: A* from the agent's state, stopped after at most lookahead
+ * expansions or once a goal state is reached, whichever comes first.<br>
+ * - Learning: the heuristic values of the expanded states are raised to the
+ * cheapest cost of reaching the search frontier from them plus the frontier's
+ * values, with a Dijkstra pass from the frontier backward over the expanded
+ * states. Learned values are kept in a primitive array indexed by packed
+ * state and persist across ticks.<br>
+ * - Moving: the agent moves to the successor whose move cost plus heuristic
+ * value is lowest.<br>
+ * Starting from the admissible key-tour heuristic, learned values stay
+ * admissible and only ever rise, so on a finite maze the agent cannot loop
+ * forever without raising some value past the true cost; it therefore
+ * collects every key in finitely many steps whenever that is possible.
+ * Learning alone would only notice an unreachable key after exploring the
+ * agent's whole region, so the constructor checks for that once, with
+ * {@link CompiledMaze#keysReachable()}, and such an agent never moves.<br>
+ * A tick expands at most lookahead states and relaxes at most a constant
+ * number of edges per expanded or frontier state, so its worst-case work is
+ * O(lookahead log lookahead) no matter how large the maze is.<br>
+ * Instances are not thread-safe; use one per agent.
+ */
+public class RealTimeAgent {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int UNREACHABLE = BitboardDistances.UNREACHABLE;
+
+    private final CompiledMaze maze;
+    private final int lookahead;
+    // Learned heuristic value of each packed state, 0 where nothing has been
+    // learned yet and the key tour applies
+    private final int[] learned;
+    // Cost from the agent's state of each state reached by the current tick's
+    // lookahead, valid where reached holds the tick; closed holds the tick for
+    // states it expanded, which closedStates lists
+    private final int[] cost, reached, closed, closedStates;
+    private int tick;
+    private final LongMinHeap open, frontier;
+    private final int[] successors = new int[4];
+
+    private int state, moves, expanded;
+    private boolean failed;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Places an agent on the initial state of the given MazeProblem.
+     *
+     * @param problem   A MazeProblem that specifies the maze, actions, transitions.
+     * @param lookahead The most states to expand in one tick.
+     * @throws IllegalArgumentException If lookahead is less than 1.
+     */
+    public RealTimeAgent(MazeProblem problem, int lookahead) {
+        this(new CompiledMaze(problem), lookahead);
+    }
+
+    /**
+     * Places an agent on the initial state of the given maze.
+     *
+     * @param maze      The CompiledMaze to move in.
+     * @param lookahead The most states to expand in one tick.
+     * @throws IllegalArgumentException If lookahead is less than 1.
+     */
+    public RealTimeAgent(CompiledMaze maze, int lookahead) {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("Lookahead must be at least 1");
+        }
+        this.maze = maze;
+        this.lookahead = lookahead;
+        int states = maze.stateCount();
+        this.learned = new int[states];
+        this.cost = new int[states];
+        this.reached = new int[states];
+        this.closed = new int[states];
+        this.closedStates = new int[lookahead];
+        // Sized for a full tick's pushes, so the heaps rarely have to grow
+        this.open = new LongMinHeap(4 * lookahead + 2);
+        this.frontier = new LongMinHeap(8 * lookahead + 8);
+        this.failed = !maze.keysReachable();
+        this.state = maze.isComplete() ? maze.state(maze.start(), 0) : -1;
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Runs one tick: a bounded lookahead, a learning pass over the states it
+     * expanded, and one move.
+     *
+     * @return The direction of the move taken, or -1 if the agent has already
+     *         collected every key or knows it cannot.
+     */
+    public int step() {
+        expanded = 0;
+        if (failed || isDone()) {
+            return -1;
+        }
+        tick++;
+        lookahead();
+        learn();
+
+        int best = -1, bestValue = UNREACHABLE;
+        int count = maze.successors(state, successors);
+        for (int i = 0; i < count; i++) {
+            int next = successors[i], value = estimate(next);
+            if (value < UNREACHABLE && maze.cost(maze.cellOf(next)) + value < bestValue) {
+                best = next;
+                bestValue = maze.cost(maze.cellOf(next)) + value;
+            }
+        }
+        if (best == -1) {
+            failed = true;
+            return -1;
+        }
+        int direction = maze.direction(maze.cellOf(state), maze.cellOf(best));
+        state = best;
+        moves++;
+        return direction;
+    }
+
+    /**
+     * Steps until every key is collected or the agent knows it cannot be.
+     *
+     * @return The moves taken from the agent's state when called, or null if
+     *         some key cannot be reached.
+     */
+    public PackedPath run() {
+        PackedPath result = new PackedPath();
+        for (int direction = step(); direction != -1; direction = step()) {
+            result.add(direction);
+        }
+        return failed ? null : result;
+    }
+
+    /**
+     * @return The agent's current packed state, or -1 if the maze lacks a key
+     *         or an initial state.
+     */
+    public int state() {
+        return state;
+    }
+
+    /**
+     * @return True if the agent has collected every key.
+     */
+    public boolean isDone() {
+        return !failed && maze.keysOf(state) == maze.allKeys();
+    }
+
+    /**
+     * @return True if the agent knows that some key cannot be reached.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * @return The number of moves taken so far.
+     */
+    public int moves() {
+        return moves;
+    }
+
+    /**
+     * @return The number of states expanded by the most recent tick.
+     */
+    public int expanded() {
+        return expanded;
+    }
+
+    /**
+     * @param state A packed state.
+     * @return The learned heuristic value of the state, or its key tour if
+     *         nothing has been learned about it.
+     */
+    private int estimate(int state) {
+        int value = learned[state];
+        return value != 0 ? value : maze.keyTour(state);
+    }
+
+    /**
+     * A* from the agent's state, stopped after lookahead expansions or at the
+     * first goal state popped, which is left on the open list as part of the
+     * frontier.
+     */
+    private void lookahead() {
+        open.clear();
+        cost[state] = 0;
+        reached[state] = tick;
+        open.push((long) estimate(state) << 32 | state);
+        int allKeys = maze.allKeys();
+
+        while (!open.isEmpty() && expanded < lookahead) {
+            long entry = open.pop();
+            int current = (int) entry, g = cost[current];
+            if (closed[current] == tick || (int) (entry >>> 32) != g + estimate(current)) {
+                continue;
+            }
+            if (maze.keysOf(current) == allKeys) {
+                open.push(entry);
+                return;
+            }
+            closed[current] = tick;
+            closedStates[expanded++] = current;
+
+            int count = maze.successors(current, successors);
+            for (int i = 0; i < count; i++) {
+                int next = successors[i], h = estimate(next);
+                if (closed[next] == tick || h >= UNREACHABLE) {
+                    continue;
+                }
+                int nextCost = g + maze.cost(maze.cellOf(next));
+                if (reached[next] != tick || nextCost < cost[next]) {
+                    cost[next] = nextCost;
+                    reached[next] = tick;
+                    open.push((long) (nextCost + h) << 32 | next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Raises the value of every expanded state to the cheapest cost of reaching
+     * a frontier state from it plus that state's value, by Dijkstra search from
+     * the frontier backward over expanded states. Expanded states that reach
+     * no frontier state are marked UNREACHABLE: the lookahead saw everything
+     * they can reach and there was no goal.
+     */
+    private void learn() {
+        frontier.clear();
+        for (int i = 0; i < expanded; i++) {
+            learned[closedStates[i]] = UNREACHABLE;
+        }
+        for (int i = 0; i < open.size(); i++) {
+            int next = (int) open.get(i);
+            if (closed[next] != tick) {
+                frontier.push((long) estimate(next) << 32 | next);
+            }
+        }
+
+        while (!frontier.isEmpty()) {
+            long entry = frontier.pop();
+            int current = (int) entry, value = (int) (entry >>> 32);
+            if (value != estimate(current)) {
+                continue;
+            }
+            // Moving into current's cell costs its tile, whichever state moves
+            int cell = maze.cellOf(current), keys = maze.keysOf(current), bit = maze.keyBit(cell);
+            int previousValue = maze.cost(cell) + value;
+            for (int direction = 0; direction < 4; direction++) {
+                int previousCell = maze.neighbor(cell, direction);
+                if (maze.isWall(previousCell)) {
+                    continue;
+                }
+                // Predecessors either held current's key already or picked it up
+                // on this move
+                relax(maze.state(previousCell, keys), previousValue);
+                if ((keys & bit) != 0) {
+                    relax(maze.state(previousCell, keys & ~bit), previousValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lowers the learned value of an expanded state, if the given value is
+     * lower, and queues it to pass the value on to its own predecessors.
+     *
+     * @param previous A state that might precede a settled one.
+     * @param value    Its cost through that settled state.
+     */
+    private void relax(int previous, int value) {
+        if (closed[previous] == tick && value < learned[previous]) {
+            learned[previous] = value;
+            frontier.push((long) value << 32 | previous);
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+
+/**
+ * Cache of solutions for services that ask for the same routes many times.
+ * Solutions are keyed by the rolling hash of the MazeProblem's grid (see
+ * {@link MazeProblem#gridHash()}), which each MazeProblem computes once, plus
+ * its initial state and key tiles, so a repeated query costs a hash lookup.
+ * Two different grids sharing a 64-bit hash would share entries; that is
+ * taken as too unlikely to guard against with a full grid comparison, which
+ * would cost as much as the hash.<br>
+ * At most capacity solutions are kept, evicting the least recently used.
+ * {@link #updateTile(MazeProblem, int, int, char)} reports an edit of a maze's
+ * grid. An edit that makes a tile costlier to enter, or a wall, leaves every
+ * solution that does not enter that tile optimal, since no other route got
+ * cheaper, so only the solutions that enter it are dropped; the rest are
+ * moved to the edited grid's hash, rolled over the edit without rehashing.
+ * An edit that makes a tile cheaper may open a shortcut for any route, so it
+ * drops every solution of the grid.<br>
+ * Returned solutions are shared between callers and unmodifiable. All methods
+ * are thread-safe; misses are solved outside the lock, so concurrent misses on
+ * different problems are solved in parallel.
+ */
+public class SolutionCache {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final String EDITABLE_TILES = ".MX";
+
+    private final Pathfinder.Engine engine;
+    private final int capacity;
+    // Least recently used first; eldest entries past capacity are evicted
+    private final LinkedHashMap<Key, Entry> entries;
+    // Keys of the entries of each grid hash, for edits
+    private final Map<Long, Set<Key>> byGrid = new HashMap<>();
+    private long hits, misses, evictions, invalidations;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Creates a cache that solves misses with {@link Pathfinder#solve(MazeProblem)}.
+     *
+     * @param capacity The most solutions to keep.
+     * @throws IllegalArgumentException If capacity is less than 1.
+     */
+    public SolutionCache(int capacity) {
+        this(capacity, Pathfinder.Engine.A_STAR);
+    }
+
+    /**
+     * Creates a cache that solves misses with the given engine.
+     *
+     * @param capacity The most solutions to keep.
+     * @param engine   The engine to solve misses with.
+     * @throws IllegalArgumentException If capacity is less than 1.
+     */
+    public SolutionCache(int capacity, Pathfinder.Engine engine) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.engine = engine;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= SolutionCache.this.capacity) {
+                    return false;
+                }
+                unindex(eldest.getKey());
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Returns the cached solution of the given problem, solving and caching it
+     * on a miss.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     * @return An unmodifiable List of actions of the format ["R", "R", "L", ...],
+     *         or null if there is no solution.
+     */
+    public List<String> solve(MazeProblem problem) {
+        Key key = new Key(problem, problem.gridHash());
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.solution;
+            }
+            misses++;
+        }
+        List<String> solution = Pathfinder.solve(problem, engine);
+        Entry entry = new Entry(problem, solution == null ? null : Collections.unmodifiableList(solution));
+        synchronized (this) {
+            if (entries.put(key, entry) == null) {
+                byGrid.computeIfAbsent(key.grid, grid -> new HashSet<>()).add(key);
+            }
+        }
+        return entry.solution;
+    }
+
+    /**
+     * Reports that the tile at the given position of the problem's grid is
+     * being changed, invalidating the cached solutions of the grid that the
+     * edit may have made wrong and moving the rest to the edited grid. The
+     * MazeProblem itself is not modified; queries for the edited maze come as
+     * a new MazeProblem of the edited grid.
+     *
+     * @param problem The MazeProblem of the grid before the edit.
+     * @param col     Column of the tile to change.
+     * @param row     Row of the tile to change.
+     * @param tile    The new tile: 'X' (wall), '.' (open), or 'M' (mud).
+     * @throws IllegalArgumentException If either tile is not one of those, e.g.,
+     *                                  the position holds a key or the initial
+     *                                  state, or is out of bounds.
+     */
+    public void updateTile(MazeProblem problem, int col, int row, char tile) {
+        if (row < 0 || row >= problem.rows() || col < 0 || col >= problem.cols()
+                || EDITABLE_TILES.indexOf(problem.tile(col, row)) == -1 || EDITABLE_TILES.indexOf(tile) == -1) {
+            throw new IllegalArgumentException("Only 'X', '.', and 'M' tiles can change, to one another");
+        }
+        char old = problem.tile(col, row);
+        if (old == tile) {
+            return;
+        }
+        long grid = problem.gridHash(), edited = problem.editedHash(col, row, tile);
+        // EDITABLE_TILES is ordered by the cost of entering each tile
+        boolean cheaper = EDITABLE_TILES.indexOf(tile) < EDITABLE_TILES.indexOf(old);
+        long position = position(col, row);
+        synchronized (this) {
+            Set<Key> keys = byGrid.remove(grid);
+            if (keys == null) {
+                return;
+            }
+            // Visit the grid's entries in least recently used order, so the ones
+            // moved keep their order among themselves
+            List<Key> gridKeys = new ArrayList<>();
+            for (Key key : entries.keySet()) {
+                if (keys.contains(key)) {
+                    gridKeys.add(key);
+                }
+            }
+            for (Key key : gridKeys) {
+                Entry entry = entries.remove(key);
+                if (cheaper || Arrays.binarySearch(entry.entered, position) >= 0) {
+                    invalidations++;
+                } else {
+                    Key moved = new Key(edited, key);
+                    entries.put(moved, entry);
+                    byGrid.computeIfAbsent(edited, hash -> new HashSet<>()).add(moved);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of solutions cached.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of queries answered from the cache.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of queries that had to be solved.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of solutions evicted to stay within capacity.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of solutions dropped because a tile edit may have
+     *         made them wrong.
+     */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Drops every cached solution, keeping the counts.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byGrid.clear();
+    }
+
+    /**
+     * Removes an evicted key from the index of its grid.
+     *
+     * @param key The evicted key.
+     */
+    private void unindex(Key key) {
+        Set<Key> keys = byGrid.get(key.grid);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            byGrid.remove(key.grid);
+        }
+    }
+
+    /**
+     * @param col A column.
+     * @param row A row.
+     * @return The position packed into one sortable long.
+     */
+    private static long position(int col, int row) {
+        return (long) row << 32 | col;
+    }
+
+    /**
+     * What a solution depends on besides the grid: where it starts and which
+     * tiles are keys.
+     */
+    private static class Key {
+
+        final long grid;
+        final int startCol, startRow;
+        final Set<String> keyTiles;
+
+        Key(MazeProblem problem, long grid) {
+            MazeState initial = problem.getInitial();
+            this.grid = grid;
+            this.startCol = initial == null ? -1 : initial.col();
+            this.startRow = initial == null ? -1 : initial.row();
+            this.keyTiles = problem.getKeyTiles();
+        }
+
+        Key(long grid, Key other) {
+            this.grid = grid;
+            this.startCol = other.startCol;
+            this.startRow = other.startRow;
+            this.keyTiles = other.keyTiles;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return grid == key.grid && startCol == key.startCol && startRow == key.startRow
+                    && keyTiles.equals(key.keyTiles);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(grid) * 31 + startRow * 961 + startCol;
+        }
+
+    }
+
+    /**
+     * A cached solution and the positions it enters, sorted, for edits.
+     */
+    private static class Entry {
+
+        final List<String> solution;
+        final long[] entered;
+
+        Entry(MazeProblem problem, List<String> solution) {
+            this.solution = solution;
+            if (solution == null) {
+                this.entered = new long[0];
+                return;
+            }
+            List<String> actions = Arrays.asList(CompiledMaze.ACTIONS);
+            int[] colMods = { 0, 0, -1, 1 }, rowMods = { -1, 1, 0, 0 };
+            long[] positions = new long[solution.size()];
+            int col = problem.getInitial().col(), row = problem.getInitial().row();
+            for (int i = 0; i < positions.length; i++) {
+                int direction = actions.indexOf(solution.get(i));
+                col += colMods[direction];
+                row += rowMods[direction];
+                positions[i] = position(col, row);
+            }
+            Arrays.sort(positions);
+            this.entered = positions;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package main.pathfinder.informed.trikey;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Validates candidate solutions at high throughput. Where
+ * {@link MazeProblem#testSolution(List)} allocates a MazeState and a String
+ * per move and collects keys in a HashSet, this validator walks packed moves
+ * over a CompiledMaze's padded grid with a key bitmask and allocates nothing
+ * per path: the padding ring is all walls, so a path that tries to leave the
+ * maze stops at a wall without any bounds checks.<br>
+ * {@link #validateAll(List)} validates many paths in parallel and returns
+ * their costs in an int[]. Instances hold no mutable state and may be shared
+ * between threads.
+ */
+public class SolutionValidator {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    /** Cost reported for a path that hits a wall or leaves keys uncollected. */
+    public static final int NOT_A_SOLUTION = -1;
+    private static final int MOVES_PER_WORD = 32;
+
+    private final CompiledMaze maze;
+    private final int[] offsets;
+
+    // Constructor
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Prepares to validate solutions of the given MazeProblem.
+     *
+     * @param problem A MazeProblem that specifies the maze, actions, transitions.
+     */
+    public SolutionValidator(MazeProblem problem) {
+        this(new CompiledMaze(problem));
+    }
+
+    /**
+     * Prepares to validate solutions of the given maze, which must not change
+     * while this validator is in use.
+     *
+     * @param maze The CompiledMaze to validate solutions of.
+     */
+    public SolutionValidator(CompiledMaze maze) {
+        this.maze = maze;
+        int width = maze.width();
+        this.offsets = new int[] { -width, width, -1, 1 };
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Validates one packed solution.
+     *
+     * @param path A possible solution, as packed moves.
+     * @return The cost of the solution, or NOT_A_SOLUTION if it hits a wall,
+     *         leaves keys uncollected, or the maze has no initial state.
+     * @throws IllegalArgumentException If path is null.
+     */
+    public int validate(PackedPath path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Tried to validate a null solution");
+        }
+        return validate(path.words(), path.size());
+    }
+
+    /**
+     * Validates one solution given as raw packed moves, in the format of
+     * {@link PackedPath#toLongArray()}: 32 moves per long, 2 bits per move,
+     * first move in the lowest bits.
+     *
+     * @param words The packed moves.
+     * @param moves The number of moves.
+     * @return The cost of the solution, or NOT_A_SOLUTION if it hits a wall,
+     *         leaves keys uncollected, or the maze has no initial state.
+     * @throws IllegalArgumentException If words holds fewer than moves moves.
+     */
+    public int validate(long[] words, int moves) {
+        if (moves < 0 || (long) words.length * MOVES_PER_WORD < moves) {
+            throw new IllegalArgumentException("Packed moves hold fewer than " + moves + " moves");
+        }
+        int cell = maze.start();
+        if (cell == -1) {
+            return NOT_A_SOLUTION;
+        }
+        int keys = 0, cost = 0;
+        for (int move = 0; move < moves; move++) {
+            int direction = (int) (words[move / MOVES_PER_WORD] >>> (2 * (move % MOVES_PER_WORD))) & 3;
+            cell += offsets[direction];
+            if (maze.isWall(cell)) {
+                return NOT_A_SOLUTION;
+            }
+            keys |= maze.keyBit(cell);
+            cost += maze.cost(cell);
+        }
+        return keys == maze.allKeys() ? cost : NOT_A_SOLUTION;
+    }
+
+    /**
+     * Validates many packed solutions in parallel on the common fork/join pool.
+     *
+     * @param paths The possible solutions to validate; a null entry is not a
+     *              solution.
+     * @return The cost of each path, in order, or NOT_A_SOLUTION where a path
+     *         is not a solution.
+     */
+    public int[] validateAll(List<PackedPath> paths) {
+        PackedPath[] batch = paths.toArray(new PackedPath[0]);
+        int[] costs = new int[batch.length];
+        IntStream.range(0, batch.length).parallel()
+                .forEach(i -> costs[i] = batch[i] == null ? NOT_A_SOLUTION : validate(batch[i]));
+        return costs;
+    }
+
+}
@@ -0,0 +1,307 @@
+package test.pathfinder.informed.trikey;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import main.pathfinder.informed.trikey.*;
+
+/**
+ * Seeded procedural maze generators for tests and benchmarks. Every maze has
+ * a wall border, one initial state, and the requested number of keys, and
+ * every key is reachable, so each maze is solvable. The same seed and
+ * arguments always produce the same maze. Keys are the tiles of
+ * {@link #keyTiles(int)}, so mazes with more than three keys must be loaded
+ * with {@link #problem(String[], int)} or that key set.
+ */
+public class MazeGenerator {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    // Key tiles in the order they are handed out; none is a reserved tile
+    private static final String KEY_CHARS = "123456789abcdefghijklmnopqrstu";
+    // Side of the square block that holds each room of rooms()
+    private static final int ROOM_BLOCK = 12;
+
+    private MazeGenerator() {
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * @param keys The number of keys, at most CompiledMaze.MAX_KEYS.
+     * @return The tiles of the first keys keys: "1" to "9", then "a" onward.
+     * @throws IllegalArgumentException If keys is negative or too large.
+     */
+    public static Set<String> keyTiles(int keys) {
+        if (keys < 0 || keys > KEY_CHARS.length()) {
+            throw new IllegalArgumentException("Between 0 and " + KEY_CHARS.length() + " keys are supported");
+        }
+        Set<String> result = new HashSet<>();
+        for (int key = 0; key < keys; key++) {
+            result.add(KEY_CHARS.substring(key, key + 1));
+        }
+        return result;
+    }
+
+    /**
+     * @param maze A maze made by this class.
+     * @param keys The number of keys it was made with.
+     * @return The MazeProblem of the maze, with {@link #keyTiles(int)} as keys.
+     */
+    public static MazeProblem problem(String[] maze, int keys) {
+        return new MazeProblem(maze, keyTiles(keys));
+    }
+
+    /**
+     * Perfect maze carved by a randomized depth-first search (the recursive
+     * backtracker, with an explicit stack): one-cell corridors between walls,
+     * with exactly one route between any two open cells, so routes are long
+     * and winding.
+     *
+     * @param seed   The random seed.
+     * @param width  The number of columns, border included; at least 3.
+     * @param height The number of rows, border included; at least 3.
+     * @param keys   The number of keys.
+     * @return The maze.
+     */
+    public static String[] backtracker(long seed, int width, int height, int keys) {
+        Random random = new Random(seed);
+        char[][] grid = filled(width, height, 'X');
+        // Room cells sit on odd coordinates, and carving knocks out the wall
+        // between a cell and the neighbor it moves to
+        int cols = (width - 1) / 2;
+        grid[1][1] = '.';
+        randomTree(cols, (height - 1) / 2, random, (from, to) -> {
+            grid[from / cols + to / cols + 1][from % cols + to % cols + 1] = '.';
+            grid[2 * (to / cols) + 1][2 * (to % cols) + 1] = '.';
+        });
+        return place(grid, keys, random);
+    }
+
+    /**
+     * Rooms joined by corridors: the maze is split into square blocks, each
+     * holding one rectangular room with some mud on its floor, and the rooms
+     * of neighboring blocks are joined by L-shaped corridors along a random
+     * spanning tree of the blocks, plus a few extra corridors that add loops.
+     *
+     * @param seed   The random seed.
+     * @param width  The number of columns, border included.
+     * @param height The number of rows, border included.
+     * @param keys   The number of keys.
+     * @return The maze, or an open field if it is too small for one block.
+     */
+    public static String[] rooms(long seed, int width, int height, int keys) {
+        int cols = (width - 2) / ROOM_BLOCK, rows = (height - 2) / ROOM_BLOCK;
+        if (cols == 0 || rows == 0) {
+            return openField(seed, width, height, keys);
+        }
+        Random random = new Random(seed);
+        char[][] grid = filled(width, height, 'X');
+        int[] centerCols = new int[cols * rows], centerRows = new int[cols * rows];
+        for (int block = 0; block < cols * rows; block++) {
+            // Rooms keep a wall between them and the edges of their block
+            int roomWidth = 3 + random.nextInt(ROOM_BLOCK - 4), roomHeight = 3 + random.nextInt(ROOM_BLOCK - 4);
+            int left = 1 + (block % cols) * ROOM_BLOCK + 1 + random.nextInt(ROOM_BLOCK - roomWidth - 1);
+            int top = 1 + (block / cols) * ROOM_BLOCK + 1 + random.nextInt(ROOM_BLOCK - roomHeight - 1);
+            for (int row = top; row < top + roomHeight; row++) {
+                for (int col = left; col < left + roomWidth; col++) {
+                    grid[row][col] = random.nextInt(8) == 0 ? 'M' : '.';
+                }
+            }
+            centerCols[block] = left + roomWidth / 2;
+            centerRows[block] = top + roomHeight / 2;
+        }
+        randomTree(cols, rows, random, (from, to) -> carveCorridor(grid, centerCols[from], centerRows[from],
+                centerCols[to], centerRows[to], random.nextBoolean()));
+        for (int block = 0; block < cols * rows; block++) {
+            if (block % cols + 1 < cols && random.nextInt(5) == 0) {
+                carveCorridor(grid, centerCols[block], centerRows[block], centerCols[block + 1],
+                        centerRows[block + 1], random.nextBoolean());
+            }
+            if (block / cols + 1 < rows && random.nextInt(5) == 0) {
+                carveCorridor(grid, centerCols[block], centerRows[block], centerCols[block + cols],
+                        centerRows[block + cols], random.nextBoolean());
+            }
+        }
+        return place(grid, keys, random);
+    }
+
+    /**
+     * Open field with mud patches: no interior walls, and round patches of mud
+     * covering roughly a quarter of the floor, so routes are short but costs
+     * vary.
+     *
+     * @param seed   The random seed.
+     * @param width  The number of columns, border included; at least 3.
+     * @param height The number of rows, border included; at least 3.
+     * @param keys   The number of keys.
+     * @return The maze.
+     */
+    public static String[] openField(long seed, int width, int height, int keys) {
+        Random random = new Random(seed);
+        char[][] grid = filled(width, height, '.');
+        for (int col = 0; col < width; col++) {
+            grid[0][col] = grid[height - 1][col] = 'X';
+        }
+        for (int row = 0; row < height; row++) {
+            grid[row][0] = grid[row][width - 1] = 'X';
+        }
+        int maxRadius = Math.max(1, Math.min(width, height) / 10);
+        // Patches average about maxRadius^2 cells, so this many cover about a
+        // quarter of the floor, less their overlap
+        int patches = Math.max(1, (width - 2) * (height - 2) / (4 * maxRadius * maxRadius));
+        for (int patch = 0; patch < patches; patch++) {
+            int radius = 1 + random.nextInt(maxRadius);
+            int centerCol = 1 + random.nextInt(width - 2), centerRow = 1 + random.nextInt(height - 2);
+            for (int row = Math.max(1, centerRow - radius); row <= Math.min(height - 2, centerRow + radius); row++) {
+                for (int col = Math.max(1, centerCol - radius); col <= Math.min(width - 2, centerCol + radius); col++) {
+                    int dCol = col - centerCol, dRow = row - centerRow;
+                    if (dCol * dCol + dRow * dRow <= radius * radius) {
+                        grid[row][col] = 'M';
+                    }
+                }
+            }
+        }
+        return place(grid, keys, random);
+    }
+
+    /**
+     * @param width  The number of columns.
+     * @param height The number of rows.
+     * @param tile   The tile to fill with.
+     * @return A width x height grid of the given tile.
+     * @throws IllegalArgumentException If the grid is smaller than 3 x 3.
+     */
+    private static char[][] filled(int width, int height, char tile) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Mazes must be at least 3 x 3");
+        }
+        char[][] grid = new char[height][width];
+        for (char[] row : grid) {
+            Arrays.fill(row, tile);
+        }
+        return grid;
+    }
+
+    /**
+     * Builds a random spanning tree of a grid of cells with a randomized
+     * depth-first search, the recursive backtracker, on an explicit stack.
+     *
+     * @param cols   The number of columns of cells.
+     * @param rows   The number of rows of cells.
+     * @param random The generator's random source.
+     * @param link   Called with (cell, neighbor) for every tree edge, in the
+     *               order the search adds them; cell is row * cols + col.
+     */
+    private static void randomTree(int cols, int rows, Random random, BiConsumer<Integer, Integer> link) {
+        boolean[] visited = new boolean[cols * rows];
+        int[] stack = new int[cols * rows], order = { 0, 1, 2, 3 };
+        int[] colSteps = { 0, 0, -1, 1 }, rowSteps = { -1, 1, 0, 0 };
+        int size = 0;
+        stack[size++] = 0;
+        visited[0] = true;
+        while (size > 0) {
+            int cell = stack[size - 1], col = cell % cols, row = cell / cols;
+            shuffle(order, random);
+            boolean linked = false;
+            for (int direction : order) {
+                int nextCol = col + colSteps[direction], nextRow = row + rowSteps[direction];
+                int next = nextRow * cols + nextCol;
+                if (nextCol < 0 || nextRow < 0 || nextCol >= cols || nextRow >= rows || visited[next]) {
+                    continue;
+                }
+                visited[next] = true;
+                link.accept(cell, next);
+                stack[size++] = next;
+                linked = true;
+                break;
+            }
+            if (!linked) {
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Carves an L-shaped corridor between two cells, leaving existing floor
+     * and mud as it is.
+     *
+     * @param grid            The grid being built.
+     * @param fromCol         The column of the first cell.
+     * @param fromRow         The row of the first cell.
+     * @param toCol           The column of the second cell.
+     * @param toRow           The row of the second cell.
+     * @param horizontalFirst True to run along the row of the first cell first.
+     */
+    private static void carveCorridor(char[][] grid, int fromCol, int fromRow, int toCol, int toRow,
+            boolean horizontalFirst) {
+        int cornerCol = horizontalFirst ? toCol : fromCol, cornerRow = horizontalFirst ? fromRow : toRow;
+        for (int col = Math.min(fromCol, toCol); col <= Math.max(fromCol, toCol); col++) {
+            int row = horizontalFirst ? fromRow : toRow;
+            if (grid[row][col] == 'X') {
+                grid[row][col] = '.';
+            }
+        }
+        for (int row = Math.min(fromRow, toRow); row <= Math.max(fromRow, toRow); row++) {
+            if (grid[row][cornerCol] == 'X') {
+                grid[row][cornerCol] = '.';
+            }
+        }
+        if (grid[cornerRow][cornerCol] == 'X') {
+            grid[cornerRow][cornerCol] = '.';
+        }
+    }
+
+    /**
+     * Places the initial state and the keys on distinct random floor cells,
+     * then turns the grid into Strings.
+     *
+     * @param grid   The grid built, with '.' for floor.
+     * @param keys   The number of keys.
+     * @param random The generator's random source.
+     * @return The maze.
+     * @throws IllegalArgumentException If there are too few floor cells.
+     */
+    private static String[] place(char[][] grid, int keys, Random random) {
+        keyTiles(keys);
+        List<Integer> floor = new ArrayList<>();
+        int width = grid[0].length;
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < width; col++) {
+                if (grid[row][col] == '.') {
+                    floor.add(row * width + col);
+                }
+            }
+        }
+        if (floor.size() < keys + 1) {
+            throw new IllegalArgumentException("Too little floor for the initial state and " + keys + " keys");
+        }
+        // A partial Fisher-Yates shuffle picks keys + 1 distinct cells
+        for (int i = 0; i <= keys; i++) {
+            Collections.swap(floor, i, i + random.nextInt(floor.size() - i));
+            int cell = floor.get(i);
+            grid[cell / width][cell % width] = i == 0 ? 'I' : KEY_CHARS.charAt(i - 1);
+        }
+        String[] result = new String[grid.length];
+        for (int row = 0; row < grid.length; row++) {
+            result[row] = new String(grid[row]);
+        }
+        return result;
+    }
+
+    /**
+     * Shuffles the array in place.
+     *
+     * @param array  The array to shuffle.
+     * @param random The generator's random source.
+     */
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1), swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package test.pathfinder.informed.trikey;
+
+import java.lang.management.*;
+import java.util.*;
+import main.pathfinder.informed.trikey.*;
+
+/**
+ * Scaling benchmark for the Pathfinder engines. Every engine solves mazes of
+ * every generator in {@link MazeGenerator} at size tiers from 50 x 50 up to
+ * 5000 x 5000, and one line is printed per run with the states expanded, the
+ * time taken, and the peak heap use, so scaling regressions stand out as a
+ * break in a column's growth.<br>
+ * Usage: <code>java test.pathfinder.informed.trikey.PathfinderBenchmark
+ * [maxSize [keys [engine ...]]]</code>, e.g., <code>2000 5 A_STAR
+ * CORRIDOR</code>; by default every engine runs up to 5000 x 5000 with 3
+ * keys. Run it with a heap large enough for the largest tier, e.g.,
+ * <code>-Xmx8g</code>; a run that still runs out of memory is reported as
+ * such and the benchmark moves on.
+ */
+public class PathfinderBenchmark {
+
+    // Fields
+    // -----------------------------------------------------------------------------
+
+    private static final int[] SIZES = { 50, 100, 200, 500, 1000, 2000, 5000 };
+    private static final String[] GENERATORS = { "backtracker", "rooms", "openField" };
+    // Largest size each engine is run at by default; IDA* searches the same
+    // states again in every iteration, which grows too slow past small mazes
+    private static final Map<Pathfinder.Engine, Integer> SIZE_LIMITS = new EnumMap<>(Pathfinder.Engine.class);
+    static {
+        SIZE_LIMITS.put(Pathfinder.Engine.MEMORY_BOUNDED, 100);
+    }
+    private static final long SEED = 20240229L;
+
+    private PathfinderBenchmark() {
+    }
+
+    // Methods
+    // -----------------------------------------------------------------------------
+
+    /**
+     * Runs the benchmark and prints a table of results.
+     *
+     * @param args Optional: the largest size to run, the number of keys, and
+     *             the engines to run.
+     */
+    public static void main(String[] args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : SIZES[SIZES.length - 1];
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        List<Pathfinder.Engine> engines = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            engines.add(Pathfinder.Engine.valueOf(args[i]));
+        }
+        if (engines.isEmpty()) {
+            engines.addAll(Arrays.asList(Pathfinder.Engine.values()));
+        }
+
+        System.out.printf("%-12s %-16s %6s %12s %10s %10s %8s%n", "generator", "engine", "size", "expanded", "ms",
+                "peak MB", "cost");
+        for (int size : SIZES) {
+            if (size > maxSize) {
+                break;
+            }
+            for (String generator : GENERATORS) {
+                MazeProblem problem = MazeGenerator.problem(generate(generator, size, keys), keys);
+                for (Pathfinder.Engine engine : engines) {
+                    if (size > SIZE_LIMITS.getOrDefault(engine, Integer.MAX_VALUE) && args.length < 3) {
+                        continue;
+                    }
+                    System.out.printf("%-12s %-16s %6d %s%n", generator, engine, size, run(problem, engine));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param generator The name of a MazeGenerator method.
+     * @param size      The width and height of the maze.
+     * @param keys      The number of keys.
+     * @return The maze, generated from the benchmark's fixed seed.
+     */
+    private static String[] generate(String generator, int size, int keys) {
+        switch (generator) {
+        case "backtracker":
+            return MazeGenerator.backtracker(SEED, size, size, keys);
+        case "rooms":
+            return MazeGenerator.rooms(SEED, size, size, keys);
+        default:
+            return MazeGenerator.openField(SEED, size, size, keys);
+        }
+    }
+
+    /**
+     * Solves one problem on a fresh single-threaded BatchSolver, measuring the
+     * peak heap use of the run by resetting every heap pool's peak first.
+     * BatchSolver runs HASH_DISTRIBUTED queries as plain A*, since a batch
+     * already keeps every core busy, so that engine is timed through
+     * {@link Pathfinder#solve(MazeProblem, Pathfinder.Engine)} instead, with
+     * no count of expanded states (-1).
+     *
+     * @param problem The MazeProblem to solve.
+     * @param engine  The engine to solve it with.
+     * @return The columns of the result: expanded, milliseconds, peak heap in
+     *         MB, and solution cost.
+     */
+    private static String run(MazeProblem problem, Pathfinder.Engine engine) {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        try {
+            List<String> solution;
+            long nanos;
+            int expanded;
+            if (engine == Pathfinder.Engine.HASH_DISTRIBUTED) {
+                long start = System.nanoTime();
+                solution = Pathfinder.solve(problem, engine);
+                nanos = System.nanoTime() - start;
+                expanded = -1;
+            } else {
+                try (BatchSolver solver = new BatchSolver(1, engine)) {
+                    BatchSolver.Result result = solver.solveAll(Collections.singletonList(problem)).get(0);
+                    solution = result.solution();
+                    nanos = result.nanos();
+                    expanded = result.expanded();
+                }
+            }
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            int cost = solution == null ? -1 : problem.testSolution(solution)[1];
+            return String.format("%12d %10.1f %10.1f %8d", expanded, nanos / 1e6, peak / (1024.0 * 1024.0), cost);
+        } catch (OutOfMemoryError e) {
+            return "out of memory";
+        }
+    }
+
+}
@@ -10,6 +10,9 @@ import org.junit.rules.TestWatcher;
 import org.junit.rules.Timeout;
 import org.junit.runner.Description;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 import main.pathfinder.informed.trikey.*;
 
@@ -184,4 +187,918 @@ public class PathfinderTests {
         assertNull(NOS_ERR, solution); // Ensure that Pathfinder knows when there's no solution
     }
     
+    @Test
+    public void testPathfinder_t6() {
+        // No outer walls: transitions must stop at the maze boundary
+        String[] maze = {
+        //   01234
+            "I..M1", // 0
+            ".XX.X", // 1
+            "2...3"  // 2
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        List<String> solution = Pathfinder.solve(prob);
+        
+        int[] result = prob.testSolution(solution);
+        assertEquals(SOL_ERR, 1, result[0]); // Test that result is a solution
+        assertEquals(OPT_ERR, 12, result[1]); // Ensure that the solution is optimal
+    }
+    
+    @Test
+    public void testCompiledMaze_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.1.2X", // 1
+            "XM....X", // 2
+            "X.X.X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        CompiledMaze compiled = new CompiledMaze(new MazeProblem(maze));
+        int[] successors = new int[4];
+        
+        // From (2, 1): (2, 2) below, (1, 1) to the left, and key "1" to the right
+        int state = compiled.state(compiled.cell(2, 1), 0);
+        assertEquals(3, compiled.successors(state, successors));
+        assertEquals(compiled.state(compiled.cell(3, 1), 0b001), successors[2]);
+        
+        // Mud costs 3 to enter, everything else 1; keys "1", "2", "3" get bits 0, 1, 2
+        assertEquals(3, compiled.cost(compiled.cell(1, 2)));
+        assertEquals(1, compiled.cost(compiled.cell(1, 1)));
+        assertEquals(0b100, compiled.keyBit(compiled.cell(5, 3)));
+        assertEquals(6, new MazeProblem(maze).testSolution(Pathfinder.solve(compiled))[1]);
+    }
+    
+    @Test
+    public void testKeyRouter_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.1.2X", // 1
+            "X.....X", // 2
+            "X.X.X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int[] result = prob.testSolution(KeyRouter.solve(prob));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 6, result[1]);
+    }
+    
+    @Test
+    public void testKeyRouter_t1() {
+        // Six keys, where collecting them in tile order is far from optimal
+        String[] maze = {
+        //   012345678
+            "XXXXXXXXX", // 0
+            "X6..I..1X", // 1
+            "X.XXMXX.X", // 2
+            "X5.M.M.2X", // 3
+            "X.XX.XX.X", // 4
+            "X4.....3X", // 5
+            "XXXXXXXXX"  // 6
+        };
+        Set<String> keys = new HashSet<>(Arrays.asList("1", "2", "3", "4", "5", "6"));
+        MazeProblem prob = new MazeProblem(maze, keys);
+        int[] result = prob.testSolution(KeyRouter.solve(prob));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, prob.testSolution(Pathfinder.solve(prob))[1], result[1]);
+        assertEquals(OPT_ERR, 17, result[1]);
+    }
+    
+    @Test
+    public void testKeyRouter_t2() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.3..X", // 1
+            "X.MXM.X", // 2
+            "X2X1X.X", // 3
+            "XXXXXXX"  // 4
+        };
+        assertNull(NOS_ERR, KeyRouter.solve(new MazeProblem(maze)));
+    }
+    
+    @Test
+    public void testJumpPoint_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI....X", // 1
+            "X.MMM2X", // 2
+            "X.X1X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int[] result = prob.testSolution(Pathfinder.solve(prob, Pathfinder.Engine.JUMP_POINT));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 14, result[1]);
+    }
+    
+    @Test
+    public void testJumpPoint_t1() {
+        // Open floor with a mud patch and walls forcing turns around them
+        String[] maze = {
+        //   0123456789
+            "..........", // 0
+            ".I....X...", // 1
+            "......X.3.", // 2
+            "..MM..XXX.", // 3
+            "..MM......", // 4
+            "1.........", // 5
+            ".....XXX..", // 6
+            ".......X2.", // 7
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int[] result = prob.testSolution(Pathfinder.solve(prob, Pathfinder.Engine.JUMP_POINT));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, prob.testSolution(Pathfinder.solve(prob))[1], result[1]);
+    }
+    
+    @Test
+    public void testIncremental_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.1.2X", // 1
+            "X.....X", // 2
+            "X.X.X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        IncrementalPathfinder planner = new IncrementalPathfinder(new MazeProblem(maze));
+        assertEquals(OPT_ERR, 6, new MazeProblem(maze).testSolution(planner.plan())[1]);
+        
+        // Wall off the direct route between keys 1 and 2, then mud the detour
+        String[] edited = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.1X2X", // 1
+            "X...M.X", // 2
+            "X.X.X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        planner.updateTile(4, 1, 'X');
+        planner.updateTile(4, 2, 'M');
+        int[] result = new MazeProblem(edited).testSolution(planner.plan());
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 10, result[1]);
+        
+        // Close the last way through; the keys can no longer all be collected
+        planner.updateTile(4, 2, 'X');
+        assertNull(NOS_ERR, planner.plan());
+    }
+    
+    @Test
+    public void testIncremental_t1() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI....X", // 1
+            "X.MMM2X", // 2
+            "X.X1X3X", // 3
+            "XXXXXXX"  // 4
+        };
+        IncrementalPathfinder planner = new IncrementalPathfinder(new MazeProblem(maze));
+        List<String> plan = planner.plan();
+        assertEquals(OPT_ERR, 14, new MazeProblem(maze).testSolution(plan)[1]);
+        
+        // Walk the first two steps, then dry out the mud: the rest gets cheaper
+        assertEquals(Arrays.asList("R", "R"), plan.subList(0, 2));
+        planner.move("R");
+        planner.move("R");
+        planner.updateTile(3, 2, '.');
+        List<String> rest = planner.plan();
+        List<String> full = new ArrayList<>(plan.subList(0, 2));
+        full.addAll(rest);
+        maze[2] = "X.M.M2X";
+        int[] result = new MazeProblem(maze).testSolution(full);
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 10, result[1]);
+    }
+    
+    @Test
+    public void testIncremental_t2() {
+        String[] maze = {
+        //   012
+            "2..", // 0
+            "...", // 1
+            ".I1"  // 2
+        };
+        Set<String> keys = new HashSet<>(Arrays.asList("1", "2"));
+        IncrementalPathfinder planner = new IncrementalPathfinder(new MazeProblem(maze, keys));
+        planner.plan();
+        
+        // Plan between moves, then edit after one more move: the planner must
+        // account for both moves when it replans
+        planner.move("R");
+        planner.plan();
+        planner.updateTile(1, 0, 'X');
+        planner.move("U");
+        List<String> full = new ArrayList<>(Arrays.asList("R", "U"));
+        full.addAll(planner.plan());
+        maze[0] = "2X.";
+        int[] result = new MazeProblem(maze, keys).testSolution(full);
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 5, result[1]);
+        
+        // Columns past the edge would wrap into the next row
+        try {
+            planner.updateTile(11, 0, 'X');
+            fail("Edited a tile outside the maze");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    @Test
+    public void testHierarchical_t0() {
+        // Mud and walls straddle the cluster borders for every cluster size
+        String[] maze = {
+        //   0123456789
+            "..........", // 0
+            ".I....X...", // 1
+            "......X.3.", // 2
+            "..MM..XXX.", // 3
+            "..MM......", // 4
+            "1.........", // 5
+            ".....XXX..", // 6
+            ".......X2.", // 7
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        for (int clusterSize = 1; clusterSize <= 6; clusterSize++) {
+            int[] result = prob.testSolution(new HierarchicalPathfinder(prob, clusterSize, true).solve());
+            assertEquals(SOL_ERR, 1, result[0]);
+            assertEquals(OPT_ERR, optimal, result[1]);
+        }
+    }
+    
+    @Test
+    public void testHierarchical_t1() {
+        String[] maze = {
+        //   0123456789
+            "..........", // 0
+            ".I....X...", // 1
+            "......X.3.", // 2
+            "..MM..XXX.", // 3
+            "..MM......", // 4
+            "1.........", // 5
+            ".....XXX..", // 6
+            ".......X2.", // 7
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        
+        // Without exact refinement, solutions are valid but may cost more
+        int[] result = prob.testSolution(new HierarchicalPathfinder(prob, 3, false).solve());
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertTrue(OPT_ERR, result[1] >= prob.testSolution(Pathfinder.solve(prob))[1]);
+        
+        // Point-to-point routes: around the wall, and never onto one
+        HierarchicalPathfinder exact = new HierarchicalPathfinder(prob, 4, true);
+        assertEquals(9, exact.route(6, 0, 9, 6).size());
+        assertNull(NOS_ERR, exact.route(0, 0, 6, 1));
+        
+        // Nor off the maze, whether past a row's end or below the last row
+        assertNull(NOS_ERR, exact.route(0, 0, 12, 0));
+        assertNull(NOS_ERR, exact.route(0, 0, 0, 9));
+        assertNull(NOS_ERR, exact.route(-1, 0, 0, 0));
+    }
+    
+    @Test
+    public void testBatch_t0() {
+        List<MazeProblem> problems = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // Alternate solvable mazes of growing width with unsolvable ones
+            String floor = ".".repeat(i), wall = i % 2 == 0 ? "." + floor : "X".repeat(i + 1);
+            problems.add(new MazeProblem(new String[] {
+                "I" + floor + "1",
+                wall + "X",
+                "3" + floor + "2"
+            }));
+        }
+        try (BatchSolver solver = new BatchSolver(4, Pathfinder.Engine.A_STAR)) {
+            List<BatchSolver.Result> results = solver.solveAll(problems.stream());
+            assertEquals(problems.size(), results.size());
+            for (int i = 0; i < problems.size(); i++) {
+                BatchSolver.Result result = results.get(i);
+                List<String> expected = Pathfinder.solve(problems.get(i));
+                if (expected == null) {
+                    assertNull(NOS_ERR, result.solution());
+                    continue;
+                }
+                assertEquals(OPT_ERR, problems.get(i).testSolution(expected)[1],
+                        problems.get(i).testSolution(result.solution())[1]);
+                assertTrue(result.expanded() > 0);
+                assertTrue(result.nanos() > 0);
+            }
+        }
+    }
+    
+    @Test
+    public void testMazeLoader_t0() throws IOException {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.3..X", // 1
+            "X.MMM.X", // 2
+            "X2X.X1X", // 3
+            "XXXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        Path text = Files.createTempFile("maze", ".txt"), binary = Files.createTempFile("maze", ".bin");
+        try {
+            // Windows line endings, no trailing line break
+            Files.write(text, String.join("\r\n", maze).getBytes());
+            CompiledMaze loaded = MazeLoader.loadText(text);
+            assertEquals(OPT_ERR, 10, prob.testSolution(Pathfinder.solve(loaded))[1]);
+            
+            // The binary round trip solves from the mapped file itself
+            MazeLoader.save(loaded, binary);
+            CompiledMaze mapped = MazeLoader.loadBinary(binary);
+            assertEquals(loaded.start(), mapped.start());
+            assertEquals(OPT_ERR, 10, prob.testSolution(Pathfinder.solve(mapped))[1]);
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+    
+    @Test
+    public void testMazeLoader_t1() throws IOException {
+        Path text = Files.createTempFile("maze", ".txt");
+        try {
+            // A final line break is optional
+            for (String valid : new String[] { "I1.\n23.\n", "I1.\r\n23.\r\n" }) {
+                Files.write(text, valid.getBytes(StandardCharsets.UTF_8));
+                CompiledMaze loaded = MazeLoader.loadText(text);
+                assertEquals(5, loaded.width());
+                assertEquals(4, loaded.height());
+            }
+            
+            // "\u00e9" is two bytes in UTF-8, so its row is as long as the others
+            for (String invalid : new String[] { "I.1\n2.\n3..", "I.1\n2.Z\n3..", "I.1\nI23\n...", "I11\n.23",
+                    "I.1\n2\u00e9\n3..", "I1.\n23XX", "I1.\r\n23.X." }) {
+                Files.write(text, invalid.getBytes(StandardCharsets.UTF_8));
+                try {
+                    MazeLoader.loadText(text);
+                    fail("Accepted an invalid maze: " + invalid);
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+        } finally {
+            Files.delete(text);
+        }
+    }
+    
+    @Test
+    public void testPackedPath_t0() {
+        // Long enough to span several words
+        List<String> actions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            actions.add(new String[] { "U", "D", "L", "R" }[(i * 7) % 4]);
+        }
+        PackedPath path = PackedPath.of(actions);
+        assertEquals(actions, path.asList());
+        assertEquals(new PackedPath(path.toLongArray(), path.size()), path);
+        
+        PackedPath appended = new PackedPath();
+        for (PrimitiveIterator.OfInt moves = path.iterator(); moves.hasNext();) {
+            appended.add(moves.nextInt());
+        }
+        assertEquals(path, appended);
+        assertEquals(String.join("", actions), appended.toString());
+    }
+    
+    @Test
+    public void testPackedPath_t1() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.3..X", // 1
+            "X.MMM.X", // 2
+            "X2X.X1X", // 3
+            "XXXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        PackedPath solution = Pathfinder.solvePacked(new CompiledMaze(prob));
+        int[] result = prob.testSolution(solution);
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, 10, result[1]);
+        assertArrayEquals(result, prob.testSolution(solution.asList()));
+        
+        // Missing a key, then walking into a wall
+        assertEquals(0, prob.testSolution(PackedPath.of(Arrays.asList("R", "R")))[0]);
+        assertEquals(-1, prob.testSolution(PackedPath.of(Arrays.asList("U")))[1]);
+    }
+    
+    @Test
+    public void testAnytime_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.3..X", // 1
+            "X.MMM.X", // 2
+            "X2X.X1X", // 3
+            "XXXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        AnytimePathfinder search = new AnytimePathfinder(4.0, 1.0);
+        
+        // Given enough time, the final iteration is plain A*
+        AnytimePathfinder.Result result = search.solve(prob, 1_000_000_000L);
+        assertEquals(SOL_ERR, 1, prob.testSolution(result.solution())[0]);
+        assertEquals(OPT_ERR, 10, result.cost());
+        assertEquals(1.0, result.bound(), 0);
+        
+        maze[2] = "X.MXM.X";
+        maze[3] = "X2X1X.X";
+        assertNull(NOS_ERR, search.solve(new MazeProblem(maze), 1_000_000_000L));
+    }
+    
+    @Test
+    public void testAnytime_t1() {
+        // A wide open floor: the weighted first iteration reaches a solution
+        // long before A* would finish, and the bound must cover its cost
+        String[] maze = new String[60];
+        Arrays.fill(maze, ".".repeat(60));
+        maze[0] = "I" + ".".repeat(58) + "1";
+        maze[59] = "2" + ".".repeat(58) + "3";
+        MazeProblem prob = new MazeProblem(maze);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        AnytimePathfinder search = new AnytimePathfinder();
+        for (long budget : new long[] { 0, 100_000, 1_000_000, 10_000_000 }) {
+            AnytimePathfinder.Result result = search.solve(prob, budget);
+            if (result.solution() == null) {
+                assertEquals(Double.POSITIVE_INFINITY, result.bound(), 0);
+                continue;
+            }
+            int[] tested = prob.testSolution(result.solution());
+            assertEquals(SOL_ERR, 1, tested[0]);
+            assertEquals(tested[1], result.cost());
+            assertTrue(OPT_ERR, result.cost() <= result.bound() * optimal);
+        }
+    }
+    
+    @Test
+    public void testHashDistributed_t0() {
+        String[] maze = {
+        //   0123456789
+            "XXXXXXXXXX", // 0
+            "XI.M..X.3X", // 1
+            "X.XM.XX..X", // 2
+            "X...M...XX", // 3
+            "X1XX.XX.2X", // 4
+            "XXXXXXXXXX"  // 5
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        int[] result = prob.testSolution(Pathfinder.solve(prob, Pathfinder.Engine.HASH_DISTRIBUTED));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, optimal, result[1]);
+        
+        maze[3] = "X...MXX.XX";
+        maze[4] = "X1XXXXX.2X";
+        assertNull(NOS_ERR, Pathfinder.solve(new MazeProblem(maze), Pathfinder.Engine.HASH_DISTRIBUTED));
+    }
+    
+    @Test
+    public void testHashDistributed_t1() {
+        // Several workers exchange states even on a single core
+        String[] maze = {
+        //   0123456789
+            "XXXXXXXXXX", // 0
+            "XI.M..X.3X", // 1
+            "X.XM.XX..X", // 2
+            "X...M...XX", // 3
+            "X1XX.XX.2X", // 4
+            "XXXXXXXXXX"  // 5
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        CompiledMaze compiled = new CompiledMaze(prob);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        for (int workers = 2; workers <= 4; workers++) {
+            int[] result = prob.testSolution(Pathfinder.solveParallel(compiled, workers));
+            assertEquals(SOL_ERR, 1, result[0]);
+            assertEquals(OPT_ERR, optimal, result[1]);
+        }
+        
+        maze[3] = "X...MXX.XX";
+        maze[4] = "X1XXXXX.2X";
+        assertNull(NOS_ERR, Pathfinder.solveParallel(new CompiledMaze(new MazeProblem(maze)), 3));
+        try {
+            Pathfinder.solveParallel(compiled, 0);
+            fail("Accepted zero workers");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    @Test
+    public void testLandmarks_t0() {
+        // A long wall between the start and keys that Manhattan distance ignores
+        String[] maze = {
+        //   0123456789
+            "..I.X..1..", // 0
+            "....X.....", // 1
+            "..MMX..3..", // 2
+            "....X.....", // 3
+            "....X..2..", // 4
+            "..........", // 5
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        CompiledMaze compiled = new CompiledMaze(prob);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        for (int count = 1; count <= 4; count++) {
+            Landmarks landmarks = new Landmarks(compiled, count);
+            assertEquals(count, landmarks.count());
+            // Keys around the wall are at least as far as their landmark bound
+            int start = compiled.start(), key = compiled.keyCell(0);
+            assertTrue(landmarks.lowerBound(start, key) > compiled.manhattan(compiled.state(start, 0)));
+            int[] result = prob.testSolution(Pathfinder.solve(compiled, landmarks));
+            assertEquals(SOL_ERR, 1, result[0]);
+            assertEquals(OPT_ERR, optimal, result[1]);
+        }
+    }
+    
+    @Test
+    public void testLandmarks_t1() throws IOException {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI.3..X", // 1
+            "X.MMM.X", // 2
+            "X2X.X1X", // 3
+            "XXXXXXX"  // 4
+        };
+        CompiledMaze compiled = new CompiledMaze(new MazeProblem(maze));
+        Path file = Files.createTempFile("landmarks", ".bin");
+        try {
+            new Landmarks(compiled, 3).save(file);
+            Landmarks loaded = Landmarks.load(file);
+            assertEquals(3, loaded.count());
+            assertEquals(OPT_ERR, 10, new MazeProblem(maze).testSolution(Pathfinder.solve(compiled, loaded))[1]);
+        } finally {
+            Files.delete(file);
+        }
+        
+        // Landmarks of one maze cannot guide a search of a maze of another size
+        CompiledMaze other = new CompiledMaze(new MazeProblem(new String[] { "I123" }));
+        Landmarks landmarks = new Landmarks(other, 1);
+        assertFalse(landmarks.fits(compiled));
+        try {
+            Pathfinder.solve(compiled, landmarks);
+            fail("Solved with landmarks of a different maze");
+        } catch (IllegalArgumentException expected) {
+        }
+        
+        // Landmarks describe the grid, so they can be built from a maze with no
+        // initial state and guide queries that start anywhere in it
+        MazeProblem prob = new MazeProblem(maze);
+        maze[1] = "X..3..X";
+        Landmarks gridOnly = new Landmarks(new CompiledMaze(new MazeProblem(maze)), 3);
+        assertEquals(3, gridOnly.count());
+        assertEquals(OPT_ERR, 10, prob.testSolution(Pathfinder.solve(compiled, gridOnly))[1]);
+    }
+    
+    @Test
+    public void testCorridor_t0() {
+        String[] maze = {
+        //   012345678
+            "XXXXXXXXX", // 0
+            "XI....X1X", // 1
+            "X.XXX.X.X", // 2
+            "X.XX..M.X", // 3
+            "X.XXXXX.X", // 4
+            "X3...2..X", // 5
+            "XXXXXXXXX"  // 6
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        CorridorGraph graph = new CorridorGraph(prob);
+        // The dead end (4, 3) is filled, and only the start, the keys, and the
+        // junction (7, 3) remain as nodes, joined by corridors
+        assertEquals(1, graph.filledCount());
+        assertEquals(5, graph.nodeCount());
+        int[] result = prob.testSolution(graph.solve());
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, prob.testSolution(Pathfinder.solve(prob))[1], result[1]);
+        
+        maze[2] = "X.XXX.XXX";
+        assertNull(NOS_ERR, Pathfinder.solve(new MazeProblem(maze), Pathfinder.Engine.CORRIDOR));
+        
+        // Nor is there one without an initial state
+        maze[1] = "X.....X1X";
+        assertNull(NOS_ERR, Pathfinder.solve(new MazeProblem(maze), Pathfinder.Engine.CORRIDOR));
+    }
+    
+    @Test
+    public void testBitboard_t0() {
+        String[] maze = {
+        //   0123
+            "I.M1", // 0
+            "..X.", // 1
+            "2..3"  // 2
+        };
+        CompiledMaze compiled = new CompiledMaze(new MazeProblem(maze));
+        BitboardDistances wavefront = new BitboardDistances(compiled);
+        int start = compiled.start(), mud = compiled.cell(2, 0);
+        // Entering the mud costs 3, leaving it only costs the cell entered
+        assertEquals(4, wavefront.distances(start)[mud]);
+        assertEquals(2, wavefront.distances(mud)[start]);
+        assertEquals(BitboardDistances.UNREACHABLE, wavefront.distances(start)[compiled.cell(2, 1)]);
+        
+        // Point 0 is the start, point k + 1 is key k
+        int[][] costs = wavefront.keyDistances();
+        assertArrayEquals(new int[] { 0, 5, 2, 5 }, costs[0]);
+        assertEquals(5, costs[1][0]);
+        assertEquals(3, costs[2][3]);
+    }
+    
+    @Test
+    public void testPathDatabase_t0() throws IOException {
+        String[] maze = {
+        //   012345
+            "I.M1X.", // 0
+            "..X.X.", // 1
+            "2..3X."  // 2
+        };
+        CompiledMaze compiled = new CompiledMaze(new MazeProblem(maze));
+        Path file = Files.createTempFile("paths", ".cpd");
+        try {
+            PathDatabase.build(compiled, file);
+            PathDatabase database = PathDatabase.load(file);
+            // Entering the mud costs 3, so the way back is cheaper than going around
+            assertEquals(Arrays.asList("R", "R"), database.route(0, 0, 2, 0));
+            assertEquals(Arrays.asList("L", "L"), database.route(2, 0, 0, 0));
+            assertEquals(5, database.route(0, 0, 3, 2).size());
+            assertEquals(Arrays.asList("D", "D"), database.route(5, 0, 5, 2));
+            assertTrue(database.route(1, 1, 1, 1).isEmpty());
+            // Walls and other regions have no routes
+            assertNull(database.route(0, 0, 5, 0));
+            assertNull(database.route(0, 0, 2, 1));
+            assertEquals(-1, database.firstMove(compiled.cell(0, 0), compiled.cell(4, 0)));
+            
+            Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+            try {
+                PathDatabase.load(file);
+                fail("Loaded a file that is not a path database");
+            } catch (IllegalArgumentException expected) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    @Test
+    public void testFlowFields_t0() {
+        String[] maze = {
+        //   012345
+            "XXXXXX", // 0
+            "XI..1X", // 1
+            "X.XMXX", // 2
+            "X2..3X", // 3
+            "XXXXXX"  // 4
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        CompiledMaze compiled = new CompiledMaze(prob);
+        FlowFields fields = new FlowFields(compiled);
+        int initial = compiled.state(compiled.start(), 0);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        assertEquals(OPT_ERR, optimal, fields.costToFinish(initial));
+        int[] result = prob.testSolution(new ArrayList<>(fields.path(initial).asList()));
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertEquals(OPT_ERR, optimal, result[1]);
+        
+        // Agents elsewhere share the fields, stepping one lookup at a time
+        int state = compiled.state(compiled.cell(3, 2), 0), cost = 0;
+        while (fields.nextMove(state) != -1) {
+            state = fields.step(state);
+            cost += compiled.cost(compiled.cellOf(state));
+        }
+        assertEquals(compiled.allKeys(), compiled.keysOf(state));
+        assertEquals(fields.costToFinish(compiled.state(compiled.cell(3, 2), 0)), cost);
+        assertEquals(0, fields.costToFinish(state));
+        
+        maze[1] = "XI.X1X";
+        CompiledMaze split = new CompiledMaze(new MazeProblem(maze));
+        assertNull(NOS_ERR, new FlowFields(split).path(split.state(split.start(), 0)));
+        
+        // Key 3 is missing, so a state holding the other two cannot finish
+        CompiledMaze missing = new CompiledMaze(new MazeProblem(new String[] { "XXXXXX", "XI.12X", "XXXXXX" }));
+        FlowFields missingFields = new FlowFields(missing);
+        assertEquals(BitboardDistances.UNREACHABLE, missingFields.costToFinish(missing.state(missing.cell(4, 1), 0b011)));
+        assertEquals(-1, missingFields.nextMove(missing.state(missing.cell(4, 1), 0b011)));
+    }
+    
+    @Test
+    public void testRealTime_t0() {
+        String[] maze = {
+        //   0123456
+            "XXXXXXX", // 0
+            "XI..X1X", // 1
+            "X.X.M.X", // 2
+            "X.XXX.X", // 3
+            "X2..3.X", // 4
+            "XXXXXXX"  // 5
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        RealTimeAgent agent = new RealTimeAgent(prob, 4);
+        List<String> moves = new ArrayList<>();
+        for (int direction = agent.step(); direction != -1; direction = agent.step()) {
+            // Every tick stays within its expansion budget and commits to one move
+            assertTrue(agent.expanded() <= 4);
+            moves.add(Arrays.asList("U", "D", "L", "R").get(direction));
+        }
+        assertTrue(agent.isDone());
+        int[] result = prob.testSolution(moves);
+        assertEquals(SOL_ERR, 1, result[0]);
+        assertTrue(result[1] >= prob.testSolution(Pathfinder.solve(prob))[1]);
+        assertEquals(moves.size(), agent.moves());
+        
+        maze[4] = "X2.X3XX";
+        RealTimeAgent stuck = new RealTimeAgent(new MazeProblem(maze), 4);
+        assertNull(NOS_ERR, stuck.run());
+        assertTrue(stuck.hasFailed());
+    }
+    
+    @Test
+    public void testMemoryBounded_t0() {
+        String[] maze = {
+            "XXXXXXXXX",
+            "XI..M..1X",
+            "X.XX.XX.X",
+            "X..M...3X",
+            "X.XX.XX.X",
+            "X2.....MX",
+            "XXXXXXXXX"
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        int optimal = prob.testSolution(Pathfinder.solve(prob))[1];
+        // Even a table far smaller than the state space still finds an optimal
+        // solution, only searching more states again to do it
+        MemoryBoundedSearch small = new MemoryBoundedSearch(16), large = new MemoryBoundedSearch();
+        for (MemoryBoundedSearch search : Arrays.asList(small, large)) {
+            int[] result = prob.testSolution(search.solve(new CompiledMaze(prob)));
+            assertEquals(SOL_ERR, 1, result[0]);
+            assertEquals(OPT_ERR, optimal, result[1]);
+            assertTrue(search.iterations() >= 1);
+            assertTrue(search.reExpansions() < search.expanded());
+        }
+        assertTrue(small.evictions() > 0);
+        assertTrue(small.expanded() >= large.expanded());
+        
+        maze[2] = "X.XX.XXXX";
+        maze[4] = "X.XX.XXXX";
+        maze[3] = "X..M..X3X";
+        assertNull(NOS_ERR, Pathfinder.solve(new MazeProblem(maze), Pathfinder.Engine.MEMORY_BOUNDED));
+        try {
+            new MemoryBoundedSearch(0);
+            fail("Created a search with no transposition table");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    @Test
+    public void testValidator_t0() {
+        String[] maze = {
+        //   0123
+            "I.M1", // 0
+            "..X.", // 1
+            "2..3"  // 2
+        };
+        MazeProblem prob = new MazeProblem(maze);
+        SolutionValidator validator = new SolutionValidator(prob);
+        PackedPath solution = new PackedPath(), wall = new PackedPath(), offGrid = new PackedPath();
+        for (String action : Pathfinder.solve(prob)) {
+            solution.add(action);
+        }
+        wall.add("R");
+        wall.add("D");
+        offGrid.add("U");
+        PackedPath unfinished = new PackedPath();
+        unfinished.add("D");
+        
+        int[] costs = validator.validateAll(Arrays.asList(solution, wall, offGrid, unfinished, null));
+        assertArrayEquals(new int[] { prob.testSolution(solution)[1], SolutionValidator.NOT_A_SOLUTION,
+                SolutionValidator.NOT_A_SOLUTION, SolutionValidator.NOT_A_SOLUTION, SolutionValidator.NOT_A_SOLUTION }, costs);
+        assertEquals(costs[0], validator.validate(solution.toLongArray(), solution.size()));
+        
+        // Moves off an unbordered grid and unknown actions fail rather than throw
+        assertArrayEquals(new int[] { 0, -1 }, prob.testSolution(offGrid));
+        assertArrayEquals(new int[] { 0, -1 }, prob.testSolution(Arrays.asList("L")));
+        assertArrayEquals(new int[] { 0, -1 }, prob.testSolution(Arrays.asList("R", "Up")));
+    }
+    
+    @Test
+    public void testGenerators_t0() {
+        List<String[]> mazes = Arrays.asList(
+            MazeGenerator.backtracker(7, 41, 31, 5),
+            MazeGenerator.rooms(7, 41, 31, 5),
+            MazeGenerator.openField(7, 41, 31, 5)
+        );
+        for (String[] maze : mazes) {
+            assertEquals(31, maze.length);
+            assertEquals(41, maze[0].length());
+            MazeProblem prob = MazeGenerator.problem(maze, 5);
+            assertTrue(new CompiledMaze(prob).keysReachable());
+            int[] result = prob.testSolution(Pathfinder.solve(prob));
+            assertEquals(SOL_ERR, 1, result[0]);
+        }
+        // The same seed always generates the same maze
+        assertArrayEquals(mazes.get(1), MazeGenerator.rooms(7, 41, 31, 5));
+        assertFalse(Arrays.equals(mazes.get(0), MazeGenerator.backtracker(8, 41, 31, 5)));
+        try {
+            MazeGenerator.openField(7, 3, 3, 2);
+            fail("Placed 2 keys and an initial state on a single floor cell");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    @Test
+    public void testBidirectional_t0() {
+        String[] maze = {
+        //   0123
+            "I.M1", // 0
+            "..XM", // 1
+            "2..3"  // 2
+        };
+        BidirectionalSearch search = new BidirectionalSearch(new MazeProblem(maze));
+        // Mud costs 3 to enter but 1 to leave, so a leg and its reverse differ
+        assertEquals(Arrays.asList("R", "R"), search.route(0, 0, 2, 0));
+        assertEquals(4, search.cost());
+        assertEquals(Arrays.asList("L", "L"), search.route(2, 0, 0, 0));
+        assertEquals(2, search.cost());
+        assertEquals(Arrays.asList("U", "U"), search.route(3, 2, 3, 0));
+        assertEquals(4, search.cost());
+        assertNull(search.route(0, 0, 2, 1));
+        assertNull(search.route(0, 0, 4, 0));
+        
+        // Both modes find optimal legs, and meeting in the middle settles fewer
+        // cells than a one-sided Dijkstra search, which settles every cell
+        // cheaper than the leg
+        CompiledMaze compiled = new CompiledMaze(MazeGenerator.problem(MazeGenerator.openField(1, 101, 101, 1), 1));
+        int[] distances = new BitboardDistances(compiled).distances(compiled.start());
+        int optimal = distances[compiled.keyCell(0)], oneSided = 0;
+        for (int distance : distances) {
+            oneSided += distance < optimal ? 1 : 0;
+        }
+        for (boolean guided : new boolean[] { true, false }) {
+            search = new BidirectionalSearch(compiled, guided);
+            PackedPath leg = search.leg(compiled.start(), compiled.keyCell(0));
+            assertEquals(OPT_ERR, optimal, search.cost());
+            assertEquals(optimal, new SolutionValidator(compiled).validate(leg));
+            assertTrue(search.expanded() < oneSided);
+        }
+    }
+    
+    @Test
+    public void testSolutionCache_t0() {
+        String[] maze = {
+        //   012345
+            "XXXXXX", // 0
+            "XI..1X", // 1
+            "X2X.XX", // 2
+            "X3XXXX", // 3
+            "XXXXXX"  // 4
+        };
+        String[] walled = maze.clone(), muddy = maze.clone();
+        walled[2] = "X2XXXX";
+        muddy[1] = "XIM.1X";
+        MazeProblem prob = new MazeProblem(maze), walledProb = new MazeProblem(walled),
+                muddyProb = new MazeProblem(muddy);
+        SolutionCache cache = new SolutionCache(2);
+        List<String> solution = cache.solve(prob);
+        assertEquals(Arrays.asList("D", "D", "U", "U", "R", "R", "R"), solution);
+        assertSame(solution, cache.solve(new MazeProblem(maze.clone())));
+        
+        // Walling off a tile the solution never enters keeps it for the edited
+        // maze; mud on its route drops it
+        cache.updateTile(prob, 3, 2, 'X');
+        assertSame(solution, cache.solve(walledProb));
+        assertEquals(2, cache.hits());
+        cache.updateTile(walledProb, 2, 1, 'M');
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.invalidations());
+        
+        // Clearing mud may shorten any route, so it drops every solution
+        cache.solve(muddyProb);
+        cache.updateTile(muddyProb, 2, 1, '.');
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.invalidations());
+        
+        // Past capacity, the least recently used solution is evicted
+        cache.solve(prob);
+        cache.solve(walledProb);
+        cache.solve(prob);
+        cache.solve(muddyProb);
+        assertEquals(1, cache.evictions());
+        long misses = cache.misses();
+        cache.solve(prob);
+        assertEquals(misses, cache.misses());
+        cache.solve(walledProb);
+        assertEquals(misses + 1, cache.misses());
+        try {
+            cache.updateTile(prob, 1, 1, '.');
+            fail("Edited the initial state's tile");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
 }
@@ -17,6 +17,8 @@ public class Huffman {
     private HuffNode trieRoot;
     // TreeMap chosen here just to make debugging easier
     private TreeMap<Character, String> encodingMap;
+    // Code length of every character in the Encoding Map, 0 if it has no code
+    private byte[] codeLengths;
     // Character that represents the end of a compressed transmission
     private static final char ETB_CHAR = 23;
     
@@ -38,23 +40,9 @@ public class Huffman {
     public Huffman (String corpus) {
         // TODO!
         
-    	/* New hashmap to store frequency of characters in corpus and then
-    	 sets initial frequency of the ETB_CHAR character to 1 */
-    	Map<Character, Integer> frequency = new HashMap<>(); frequency.put(ETB_CHAR, 1);
-    	
-    	// for loop to iterate through each character in corpus
-    	for (int index = 0; index < corpus.length(); index++) {
-    		
-    		// increment by 1 if it's already in the frequency map
-    		if (frequency.containsKey(corpus.charAt(index))) {
-    			frequency.put(corpus.charAt(index), frequency.get(corpus.charAt(index)) + 1);
-    		}
-    		
-    		// Add character to the map if it's not already
-    		else {
-    			frequency.put(corpus.charAt(index), 1); 
-    		}	
-    	}
+    	/* Count every character of the corpus in a dense histogram, then
+    	 add the single occurrence of the ETB_CHAR character */
+    	int[] frequency = SymbolHistogram.count(corpus); frequency[ETB_CHAR]++;
     	
     	// new priority queue of huffnode for the nodes
     	PriorityQueue<HuffNode> nodes = addQueue(frequency);
@@ -62,6 +50,7 @@ public class Huffman {
     	// add nodes to priority queue, new treemap to store encoding map, traverse trie and assign binary
     	this.addTrie(nodes);
     	this.encodingMap = new TreeMap<>();
+    	this.codeLengths = new byte[SymbolHistogram.CHAR_RANGE];
     	this.addMap(this.trieRoot, "");
     }
     
@@ -105,6 +94,23 @@ public class Huffman {
     }
     
     
+    /**
+     * Computes the exact number of bits {@link #compress(String)} would produce
+     * for the given message (excluding the 0-padding on the final byte) without
+     * building the bitstring, which makes it cheap to decide whether a block is
+     * worth compressing at all.
+     * 
+     * @param message String representing the corpus to estimate.
+     * @return Number of meaningful bits in the compressed message, including
+     *         the ETB code, or -1 if the message contains a character that is
+     *         missing from the Encoding Map.
+     */
+    public long compressedBits (String message) {
+        long bits = SymbolHistogram.sumLengths(message, this.codeLengths);
+        return bits < 0 ? -1 : bits + (this.codeLengths[ETB_CHAR] & 0xff);
+    }
+    
+    
     // -----------------------------------------------
     // Decompression
     // -----------------------------------------------
@@ -254,6 +260,7 @@ public class Huffman {
     		
     		// Add character and huffman to encoding map
     		this.encodingMap.put(node.character, bitString);
+    		this.codeLengths[node.character] = (byte) bitString.length();
     		return;
     	}
     	else {
@@ -291,17 +298,16 @@ public class Huffman {
     	return byteArrayOutput.toByteArray();
     }
     
-    private static PriorityQueue<HuffNode> addQueue (Map<Character, Integer> map) {
+    private static PriorityQueue<HuffNode> addQueue (int[] frequency) {
     	
     	// create priority queue
     	PriorityQueue<HuffNode> newQueue = new PriorityQueue<HuffNode>();
-    	for (Map.Entry<Character, Integer> entry : map.entrySet()) {
-    		
-    		// Create new huffnode object for each character
-    		HuffNode node = new HuffNode(entry.getKey(), entry.getValue());
+    	for (int character = 0; character < frequency.length; character++) {
     		
-    		// add node to priority queue
-    		newQueue.add(node);
+    		// Create new huffnode object for each character that appears
+    		if (frequency[character] > 0) {
+    			newQueue.add(new HuffNode((char) character, frequency[character]));
+    		}
     	}
     	
     	// return priority queue
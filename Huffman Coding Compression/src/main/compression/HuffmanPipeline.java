@@ -0,0 +1,431 @@
+package main.compression;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * HuffmanPipeline compresses whole files with a shared Huffman instance by
+ * splitting the text into fixed-size blocks and running three overlapping
+ * stages connected through {@link Flow} publishers:
+ * <ol>
+ *   <li>a reader that cuts the input into numbered blocks,</li>
+ *   <li>a pool of encoders that Huffman-code blocks independently,</li>
+ *   <li>a writer that emits the encoded blocks in their original order.</li>
+ * </ol>
+ * Every link has a bounded buffer, so a slow stage throttles the stages in
+ * front of it instead of letting blocks pile up in memory.<br>
+ * The compressed file is a sequence of frames, each of the format:
+ * (1) an int byte length, (2) the compressed block as returned by
+ * {@link Huffman#compress(String)}.
+ */
+public class HuffmanPipeline {
+
+    // -----------------------------------------------
+    // Construction
+    // -----------------------------------------------
+
+    private final Huffman huffman;
+    private final int blockSize, encoders, bufferSize;
+
+    /**
+     * Creates a new pipeline that compresses with the given Huffman instance.
+     *
+     * @param huffman The Huffman instance whose Encoding Map is used for every block.
+     * @param blockSize Number of characters per block.
+     * @param encoders Number of encoder threads in the middle stage.
+     * @param bufferSize Maximum number of blocks buffered between two stages.
+     */
+    public HuffmanPipeline (Huffman huffman, int blockSize, int encoders, int bufferSize) {
+        if (blockSize < 1 || encoders < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("Pipeline sizes must be positive");
+        }
+        this.huffman = huffman;
+        this.blockSize = blockSize;
+        this.encoders = encoders;
+        this.bufferSize = bufferSize;
+    }
+
+
+    // -----------------------------------------------
+    // Compression
+    // -----------------------------------------------
+
+    /**
+     * Compresses the UTF-8 text file at source into the framed format described
+     * above, written to target.
+     *
+     * @param source Path of the text file to compress.
+     * @param target Path of the compressed file to (over)write.
+     * @return PipelineStats describing the run and how busy each stage was.
+     * @throws IOException If reading or writing fails in any stage.
+     */
+    public PipelineStats compress (Path source, Path target) throws IOException {
+        ExecutorService readerLink = Executors.newSingleThreadExecutor(),
+                        writerLink = Executors.newSingleThreadExecutor(),
+                        pool = Executors.newFixedThreadPool(this.encoders);
+        PipelineStats stats = new PipelineStats(this.encoders);
+        long start = System.nanoTime();
+
+        try (Reader in = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            SubmissionPublisher<Block> reader = new SubmissionPublisher<>(readerLink, this.bufferSize);
+            EncoderStage encoder = new EncoderStage(pool, writerLink, stats);
+            WriterStage writer = new WriterStage(out, stats);
+            reader.subscribe(encoder);
+            encoder.subscribe(writer);
+
+            // The reader stage runs on the calling thread; submit blocks while
+            // the encoders are behind, which is where backpressure reaches disk
+            try {
+                char[] buffer = new char[this.blockSize];
+                long seq = 0;
+                int length;
+                while (!writer.done.isDone()) {
+                    long busy = System.nanoTime();
+                    length = fill(in, buffer);
+                    stats.readerBusy.addAndGet(System.nanoTime() - busy);
+                    if (length == 0) {
+                        break;
+                    }
+                    stats.inputChars.addAndGet(length);
+                    reader.submit(new Block(seq++, new String(buffer, 0, length)));
+                }
+                reader.close();
+            } catch (IOException | RuntimeException e) {
+                reader.closeExceptionally(e);
+            }
+
+            writer.done.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Compression pipeline failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } finally {
+            pool.shutdownNow();
+            readerLink.shutdownNow();
+            writerLink.shutdownNow();
+        }
+
+        stats.wallNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+
+    // -----------------------------------------------
+    // Decompression
+    // -----------------------------------------------
+
+    /**
+     * Decompresses a file produced by {@link #compress(Path, Path)} back into
+     * its original UTF-8 text.
+     *
+     * @param source Path of the compressed file.
+     * @param target Path of the text file to (over)write.
+     * @throws IOException If reading or writing fails, source is truncated, or
+     *         a frame length is negative or runs past the end of source.
+     */
+    public void decompress (Path source, Path target) throws IOException {
+        long remaining = Files.size(source);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)));
+             Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                remaining -= Integer.BYTES;
+                // Checked before allocating, so a corrupt length cannot ask for
+                // more memory than the file could hold
+                if (length < 0 || length > remaining) {
+                    throw new IOException("Invalid frame length " + length + " with " + remaining + " bytes left");
+                }
+                remaining -= length;
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                out.write(this.huffman.decompress(frame));
+            }
+        }
+    }
+
+
+    // -----------------------------------------------
+    // Pipeline Stages
+    // -----------------------------------------------
+
+    /**
+     * Block of text travelling through the pipeline, tagged with its position
+     * in the input so the writer can restore the original order.
+     */
+    private static class Block {
+
+        final long seq;
+        final String text;
+        final byte[] bytes;
+
+        Block (long seq, String text) {
+            this.seq = seq;
+            this.text = text;
+            this.bytes = null;
+        }
+
+        Block (long seq, byte[] bytes) {
+            this.seq = seq;
+            this.text = null;
+            this.bytes = bytes;
+        }
+
+    }
+
+    /**
+     * Middle stage: receives text blocks, hands them to the encoder pool, and
+     * publishes the compressed blocks as they finish (possibly out of order).
+     * Only as many blocks are requested from the reader as there is room for
+     * in the pool, so the reader waits whenever the encoders are saturated.
+     */
+    private class EncoderStage extends SubmissionPublisher<Block> implements Flow.Processor<Block, Block> {
+
+        private final Executor pool;
+        private final PipelineStats stats;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean upstreamDone;
+        private Flow.Subscription upstream;
+
+        EncoderStage (Executor pool, Executor downstream, PipelineStats stats) {
+            super(downstream, bufferSize);
+            this.pool = pool;
+            this.stats = stats;
+        }
+
+        @Override
+        public void onSubscribe (Flow.Subscription subscription) {
+            this.upstream = subscription;
+            subscription.request(2L * encoders);
+        }
+
+        @Override
+        public void onNext (Block block) {
+            this.inFlight.incrementAndGet();
+            this.pool.execute(() -> {
+                try {
+                    long busy = System.nanoTime();
+                    byte[] bytes = huffman.compress(block.text);
+                    this.stats.encoderBusy.addAndGet(System.nanoTime() - busy);
+                    submit(new Block(block.seq, bytes));
+                    this.upstream.request(1);
+                } catch (RuntimeException e) {
+                    this.upstream.cancel();
+                    closeOnce(e);
+                } finally {
+                    if (this.inFlight.decrementAndGet() == 0 && this.upstreamDone) {
+                        closeOnce(null);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onError (Throwable error) {
+            closeOnce(error);
+        }
+
+        @Override
+        public void onComplete () {
+            this.upstreamDone = true;
+            if (this.inFlight.get() == 0) {
+                closeOnce(null);
+            }
+        }
+
+        /**
+         * Closes the downstream publisher exactly once, either normally once the
+         * last in-flight block is published, or exceptionally on the first error.
+         *
+         * @param error The failure to forward downstream, or null if complete.
+         */
+        private void closeOnce (Throwable error) {
+            if (this.closed.compareAndSet(false, true)) {
+                if (error == null) {
+                    close();
+                } else {
+                    closeExceptionally(error);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Final stage: holds blocks that arrive ahead of their turn and writes each
+     * one as a frame as soon as every block before it has been written.
+     */
+    private class WriterStage implements Flow.Subscriber<Block> {
+
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final DataOutputStream out;
+        private final PipelineStats stats;
+        private final Map<Long, byte[]> pending = new HashMap<>();
+        private Flow.Subscription upstream;
+        private long next;
+
+        WriterStage (DataOutputStream out, PipelineStats stats) {
+            this.out = out;
+            this.stats = stats;
+        }
+
+        @Override
+        public void onSubscribe (Flow.Subscription subscription) {
+            this.upstream = subscription;
+            subscription.request(bufferSize);
+        }
+
+        @Override
+        public void onNext (Block block) {
+            long busy = System.nanoTime();
+            try {
+                this.pending.put(block.seq, block.bytes);
+                for (byte[] ready; (ready = this.pending.remove(this.next)) != null; this.next++) {
+                    this.out.writeInt(ready.length);
+                    this.out.write(ready);
+                    this.stats.blocks.incrementAndGet();
+                    this.stats.outputBytes.addAndGet(4 + ready.length);
+                }
+                this.upstream.request(1);
+            } catch (IOException e) {
+                this.upstream.cancel();
+                this.done.completeExceptionally(e);
+            }
+            this.stats.writerBusy.addAndGet(System.nanoTime() - busy);
+        }
+
+        @Override
+        public void onError (Throwable error) {
+            this.done.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete () {
+            try {
+                this.out.flush();
+                this.done.complete(null);
+            } catch (IOException e) {
+                this.done.completeExceptionally(e);
+            }
+        }
+
+    }
+
+
+    // -----------------------------------------------
+    // Statistics
+    // -----------------------------------------------
+
+    /**
+     * Summary of a single compression run. Utilisation of a stage is the
+     * fraction of the wall-clock time its threads spent doing work rather than
+     * waiting on a neighbouring stage.
+     */
+    public static class PipelineStats {
+
+        private final int encoders;
+        private final AtomicLong readerBusy = new AtomicLong(), encoderBusy = new AtomicLong(),
+                                 writerBusy = new AtomicLong(), inputChars = new AtomicLong(),
+                                 outputBytes = new AtomicLong(), blocks = new AtomicLong();
+        private long wallNanos;
+
+        PipelineStats (int encoders) {
+            this.encoders = encoders;
+        }
+
+        /**
+         * @return Number of blocks written.
+         */
+        public long blocks () {
+            return this.blocks.get();
+        }
+
+        /**
+         * @return Number of characters read from the source.
+         */
+        public long inputChars () {
+            return this.inputChars.get();
+        }
+
+        /**
+         * @return Number of bytes written to the target, including frame headers.
+         */
+        public long outputBytes () {
+            return this.outputBytes.get();
+        }
+
+        /**
+         * @return Wall-clock duration of the whole run in nanoseconds.
+         */
+        public long wallNanos () {
+            return this.wallNanos;
+        }
+
+        /**
+         * @return Fraction of the run the reader spent reading.
+         */
+        public double readerUtilisation () {
+            return utilisation(this.readerBusy.get(), 1);
+        }
+
+        /**
+         * @return Average fraction of the run each encoder thread spent encoding.
+         */
+        public double encoderUtilisation () {
+            return utilisation(this.encoderBusy.get(), this.encoders);
+        }
+
+        /**
+         * @return Fraction of the run the writer spent writing.
+         */
+        public double writerUtilisation () {
+            return utilisation(this.writerBusy.get(), 1);
+        }
+
+        private double utilisation (long busy, int threads) {
+            return this.wallNanos == 0 ? 0 : (double) busy / ((double) this.wallNanos * threads);
+        }
+
+        @Override
+        public String toString () {
+            return String.format("%d blocks, %d chars -> %d bytes in %.1f ms (reader %.0f%%, encoders %.0f%%, writer %.0f%%)",
+                    blocks(), inputChars(), outputBytes(), this.wallNanos / 1e6,
+                    100 * readerUtilisation(), 100 * encoderUtilisation(), 100 * writerUtilisation());
+        }
+
+    }
+
+
+    // HELPER METHODS
+
+    /**
+     * Reads from in until buffer is full or the input is exhausted.
+     *
+     * @param in The Reader to read from.
+     * @param buffer The char buffer to fill from the start.
+     * @return Number of chars read, 0 only at the end of the input.
+     * @throws IOException If the underlying read fails.
+     */
+    private static int fill (Reader in, char[] buffer) throws IOException {
+        int length = 0;
+        for (int read; length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1; ) {
+            length += read;
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,97 @@
+package main.compression;
+
+/**
+ * Static helpers for the two per-character loops of Huffman coding: counting
+ * the characters of a corpus, and summing code lengths over a message.<br>
+ * Both loops spread their work over several independent lanes (sub-histograms
+ * or accumulators) that are only combined at the end. Runs of a repeated
+ * character then no longer serialize on a single counter, and the JIT is free
+ * to overlap and vectorize the per-lane work on wide-register CPUs.
+ */
+final class SymbolHistogram {
+
+    // Number of distinct Java chars, i.e., the size of a dense histogram
+    static final int CHAR_RANGE = 1 << 16;
+    // Number of interleaved sub-histograms / accumulators
+    private static final int LANES = 4;
+    // Below this length the striped histogram costs more to clear than it saves
+    private static final int STRIPED_MIN_LENGTH = 1 << 16;
+    // Number of chars copied out of the String per chunk
+    private static final int CHUNK = 1 << 12;
+
+    private SymbolHistogram () {}
+
+    /**
+     * Counts the occurrences of every character in the given text.
+     * 
+     * @param text The String to count characters of.
+     * @return A dense histogram of length {@link #CHAR_RANGE}, indexed by char.
+     */
+    static int[] count (String text) {
+        int[] counts = new int[CHAR_RANGE];
+        int length = text.length();
+        if (length < STRIPED_MIN_LENGTH) {
+            for (int index = 0; index < length; index++) {
+                counts[text.charAt(index)]++;
+            }
+            return counts;
+        }
+
+        // Lane l of character c lives at striped[c * LANES + l], so the four
+        // counters of a character share a cache line and merge cheaply
+        int[] striped = new int[CHAR_RANGE * LANES];
+        char[] chunk = new char[CHUNK];
+        for (int offset = 0; offset < length; offset += CHUNK) {
+            int size = Math.min(CHUNK, length - offset), index = 0;
+            text.getChars(offset, offset + size, chunk, 0);
+            for (; index + LANES <= size; index += LANES) {
+                striped[chunk[index] << 2]++;
+                striped[(chunk[index + 1] << 2) | 1]++;
+                striped[(chunk[index + 2] << 2) | 2]++;
+                striped[(chunk[index + 3] << 2) | 3]++;
+            }
+            for (; index < size; index++) {
+                striped[chunk[index] << 2]++;
+            }
+        }
+        for (int character = 0, lane = 0; character < CHAR_RANGE; character++, lane += LANES) {
+            counts[character] = striped[lane] + striped[lane + 1] + striped[lane + 2] + striped[lane + 3];
+        }
+        return counts;
+    }
+
+    /**
+     * Sums the code length of every character in the given text.
+     * 
+     * @param text The String whose encoded length is wanted.
+     * @param codeLengths Code length per char (unsigned), 0 for chars without a code.
+     * @return The total number of code bits, or -1 if any character of text
+     *         has no code.
+     */
+    static long sumLengths (String text, byte[] codeLengths) {
+        long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int missing = 0, length = text.length();
+        char[] chunk = new char[Math.min(CHUNK, length)];
+        for (int offset = 0; offset < length; offset += CHUNK) {
+            int size = Math.min(CHUNK, length - offset), index = 0;
+            text.getChars(offset, offset + size, chunk, 0);
+            for (; index + LANES <= size; index += LANES) {
+                int len0 = codeLengths[chunk[index]] & 0xff, len1 = codeLengths[chunk[index + 1]] & 0xff,
+                    len2 = codeLengths[chunk[index + 2]] & 0xff, len3 = codeLengths[chunk[index + 3]] & 0xff;
+                sum0 += len0;
+                sum1 += len1;
+                sum2 += len2;
+                sum3 += len3;
+                // (len - 1) is negative exactly when len is 0, i.e., no code
+                missing |= (len0 - 1) | (len1 - 1) | (len2 - 1) | (len3 - 1);
+            }
+            for (; index < size; index++) {
+                int len = codeLengths[chunk[index]] & 0xff;
+                sum0 += len;
+                missing |= len - 1;
+            }
+        }
+        return missing < 0 ? -1 : sum0 + sum1 + sum2 + sum3;
+    }
+
+}
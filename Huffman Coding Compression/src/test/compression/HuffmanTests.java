@@ -10,6 +10,10 @@ import org.junit.rules.Timeout;
 import org.junit.runner.Description;
 import main.compression.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
 public class HuffmanTests {
     
     // =================================================
@@ -159,4 +163,94 @@ public class HuffmanTests {
         assertEquals("BABCBC", h.decompress(compressed));
     }
     
+    
+    // Estimation Tests
+    // -----------------------------------------------
+    @Test
+    public void bits_t0() {
+        Huffman h = new Huffman("ABBBCC");
+        // 101 = 'A', 0 = 'B', 11 = 'C', 0 = 'B', 11 = 'C', 0 = 'B', 100 = ETB
+        assertEquals(13, h.compressedBits("ABCBCB"));
+        assertEquals(3, h.compressedBits(""));
+    }
+    
+    @Test
+    public void bits_t1() {
+        Huffman h = new Huffman("ABBBCC");
+        // 'D' never appeared in the corpus, so there is no code for it
+        assertEquals(-1, h.compressedBits("ABDC"));
+    }
+    
+    @Test
+    public void bits_t2() {
+        // Long enough to take the striped histogram path during construction
+        String corpus = "";
+        for (int i = 0; i < 1 << 10; i++) {
+            corpus += "ABBBCCDEFGHIJKLMNOPQRSTUVWXYZabbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+        }
+        Huffman h = new Huffman(corpus);
+        String message = corpus.substring(0, 200);
+        assertEquals((h.compressedBits(message) + 7) / 8, h.compress(message).length);
+        assertEquals(message, h.decompress(h.compress(message)));
+    }
+    
+    
+    // Pipeline Tests
+    // -----------------------------------------------
+    @Test
+    public void pipeline_t0() throws IOException {
+        String text = "";
+        for (int i = 0; i < 200; i++) {
+            text += "ABBBCC" + (i % 7) + "\n";
+        }
+        Huffman h = new Huffman(text);
+        // Small blocks and a single-slot buffer force blocks to finish out of
+        // order and every stage to wait on its neighbours
+        HuffmanPipeline pipeline = new HuffmanPipeline(h, 37, 4, 1);
+        Path source = Files.createTempFile("pipeline", ".txt"),
+             compressed = Files.createTempFile("pipeline", ".huff"),
+             restored = Files.createTempFile("pipeline", ".out");
+        try {
+            Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+            HuffmanPipeline.PipelineStats stats = pipeline.compress(source, compressed);
+            assertEquals((text.length() + 36) / 37, stats.blocks());
+            assertEquals(text.length(), stats.inputChars());
+            assertEquals(Files.size(compressed), stats.outputBytes());
+            pipeline.decompress(compressed, restored);
+            assertEquals(text, new String(Files.readAllBytes(restored), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(source);
+            Files.delete(compressed);
+            Files.delete(restored);
+        }
+    }
+    
+    @Test
+    public void pipeline_t1() throws IOException {
+        Huffman h = new Huffman("ABBBCC");
+        HuffmanPipeline pipeline = new HuffmanPipeline(h, 4, 2, 2);
+        Path compressed = Files.createTempFile("pipeline", ".huff"),
+             restored = Files.createTempFile("pipeline", ".out");
+        try {
+            // An empty file has no frames
+            pipeline.decompress(compressed, restored);
+            assertEquals(0, Files.size(restored));
+            
+            // Frame lengths that are negative or run past the end of the file
+            byte[] bigFrame = { 0x7F, -1, -1, -1, 1, 2 };
+            byte[] negativeFrame = { -1, -1, -1, -1 };
+            for (byte[] corrupt : new byte[][] { bigFrame, negativeFrame }) {
+                Files.write(compressed, corrupt);
+                try {
+                    pipeline.decompress(compressed, restored);
+                    fail("Accepted a corrupt frame length");
+                } catch (IOException expected) {
+                }
+            }
+        } finally {
+            Files.delete(compressed);
+            Files.delete(restored);
+        }
+    }
+    
 }